@@ -0,0 +1,65 @@
+package com.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+import de.learnlib.oracle.EquivalenceOracle.MealyEquivalenceOracle;
+import de.learnlib.query.DefaultQuery;
+import net.automatalib.automaton.transducer.CompactMealy;
+import net.automatalib.util.automaton.Automata;
+import net.automatalib.word.Word;
+
+/**
+ * Helpers shared by the benchmarks
+ */
+public class BenchmarkModels {
+
+    private BenchmarkModels() {
+    }
+
+    /**
+     * Reads one of the bundled models
+     *
+     * @param directory The directory containing the models
+     * @param name      The name of the model, without the .dot extension
+     * @return The model
+     */
+    public static CompactMealy<String, String> load(String directory, String name) {
+        File file = new File(directory, name + ".dot");
+        try {
+            return CircuitParser.readMealy(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read model " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Creates an equivalence oracle which returns a shortest separating word
+     * between the target and the hypothesis. Unlike random testing, this asks the
+     * same queries in every run, so the runs of a benchmark do the same work.
+     *
+     * @param target The model that is learned
+     * @return The oracle
+     */
+    public static <I, O> MealyEquivalenceOracle<I, O> separatingWordOracle(CompactMealy<I, O> target) {
+        return (hypothesis, inputs) -> {
+            Word<I> sep = Automata.findSeparatingWord(target, hypothesis, target.getInputAlphabet());
+            return sep == null ? null : new DefaultQuery<I, Word<O>>(Word.epsilon(), sep, target.computeOutput(sep));
+        };
+    }
+
+    /**
+     * Stops the learners from reporting their progress, which would otherwise be
+     * part of the measurement.
+     *
+     * @return The previous standard output, to be restored afterwards
+     */
+    public static PrintStream silence() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return out;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.learnlib.acex.AcexAnalyzers;
+import de.learnlib.algorithm.LearningAlgorithm.MealyLearner;
+import de.learnlib.algorithm.lstar.ce.ObservationTableCEXHandlers;
+import de.learnlib.algorithm.lstar.closing.ClosingStrategies;
+import de.learnlib.algorithm.lstar.mealy.ClassicLStarMealy;
+import de.learnlib.algorithm.ttt.mealy.TTTLearnerMealy;
+import de.learnlib.filter.cache.mealy.MealyCacheOracle;
+import de.learnlib.filter.cache.mealy.MealyCaches;
+import de.learnlib.oracle.membership.MealySimulatorOracle;
+import de.learnlib.util.mealy.MealyUtil;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.transducer.CompactMealy;
+
+/**
+ * Benchmarks learning a model from scratch with each of the algorithms of
+ * {@link Main}. Counterexamples are shortest separating words, so every run
+ * asks the same queries and only the time spent by the learner varies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LearningBenchmark {
+
+    @Param({ "random-2-5-1", "random-3-10-4", "random-5-5-2", "random-2-40-1" })
+    public String model;
+
+    @Param({ "OL*", "L*", "TTT", "Decompose" })
+    public String algorithm;
+
+    @Param("../../models")
+    public String modelDirectory;
+
+    private CompactMealy<String, String> target;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void load() {
+        this.target = BenchmarkModels.load(this.modelDirectory, this.model);
+        this.out = BenchmarkModels.silence();
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOutput() {
+        System.setOut(this.out);
+    }
+
+    @Benchmark
+    public int learn() {
+        Alphabet<String> inputAlphabet = this.target.getInputAlphabet();
+        MealySimulatorOracle<String, String> oracle = new MealySimulatorOracle<>(this.target);
+        MealyCacheOracle<String, String> cache = MealyCaches.createTreeCache(inputAlphabet, oracle);
+        MealyLearner<String, String> learner;
+        if (this.algorithm.equals("Decompose")) {
+            learner = DynamicMealyDecomposer.createDynamicMealyDecomposerWithCache(inputAlphabet, oracle,
+                    AcexAnalyzers.LINEAR_FWD);
+        } else if (this.algorithm.equals("TTT")) {
+            learner = new TTTLearnerMealy<>(inputAlphabet, cache, AcexAnalyzers.LINEAR_FWD);
+        } else if (this.algorithm.equals("L*")) {
+            learner = MealyUtil.wrapSymbolLearner(
+                    new ClassicLStarMealy<String, String>(inputAlphabet, MealyUtil.wrapWordOracle(cache),
+                            ObservationTableCEXHandlers.SUFFIX1BY1, ClosingStrategies.CLOSE_FIRST));
+        } else {
+            OutputLstar<String, String> outputLearner = new OutputLstar<>(inputAlphabet, cache, true, false);
+            outputLearner.setCompileHypothesis(true);
+            learner = outputLearner;
+        }
+        return Main.learnLoop(learner, inputAlphabet, BenchmarkModels.separatingWordOracle(this.target),
+                this.target);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Multiset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.oracle.membership.MealySimulatorOracle;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.transducer.CompactMealy;
+import net.automatalib.word.Word;
+
+/**
+ * Benchmarks the operations of the {@link OutputObservationTable}.
+ * <p>
+ * The model is first learned by OL*, and the operations are measured on tables
+ * with the short prefixes and suffixes of the learned table. Membership queries
+ * are answered by simulating the model, so that the time is spent in the table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObservationTableBenchmark {
+
+    @Param({ "random-2-5-1", "random-3-10-4", "random-5-5-2", "random-2-40-1" })
+    public String model;
+
+    @Param("../../models")
+    public String modelDirectory;
+
+    private Alphabet<String> inputAlphabet;
+    private MembershipOracle<String, Word<String>> oracle;
+    private List<Word<String>> prefixes;
+    private List<Word<String>> suffixes;
+    /** The suffixes the tables of {@link FreshTable} start with */
+    private List<Word<String>> initialSuffixes;
+    /** The suffixes added by {@link #addSuffixes(FreshTable)} */
+    private List<Word<String>> extraSuffixes;
+    /** A table with all learned rows and suffixes, which is only read */
+    private OutputObservationTable<String, String> learned;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void learn() {
+        CompactMealy<String, String> target = BenchmarkModels.load(this.modelDirectory, this.model);
+        this.inputAlphabet = target.getInputAlphabet();
+        this.oracle = new MealySimulatorOracle<>(target);
+        this.out = BenchmarkModels.silence();
+        OutputLstar<String, String> learner = new OutputLstar<>(this.inputAlphabet, this.oracle, true, false);
+        learner.setCompileHypothesis(true);
+        Main.learnLoop(learner, this.inputAlphabet, BenchmarkModels.separatingWordOracle(target), target);
+        OutputObservationTable<String, String> table = learner.getObservationTable();
+        this.prefixes = new ArrayList<>();
+        for (OutputRow<String, String> row : table.getShortPrefixRows()) {
+            this.prefixes.add(row.getLabel());
+        }
+        this.suffixes = new ArrayList<>(table.getSuffixes());
+        // The first suffixes are the input symbols, which every table needs
+        int split = Math.max(this.inputAlphabet.size(), this.suffixes.size() / 2);
+        this.initialSuffixes = this.suffixes.subList(0, split);
+        this.extraSuffixes = this.suffixes.subList(split, this.suffixes.size());
+        this.learned = this.createTable(this.suffixes);
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOutput() {
+        System.setOut(this.out);
+    }
+
+    private OutputObservationTable<String, String> createTable(List<Word<String>> tableSuffixes) {
+        OutputObservationTable<String, String> table = new OutputObservationTable<>(this.inputAlphabet, this.oracle);
+        table.initialize(this.prefixes, tableSuffixes);
+        return table;
+    }
+
+    /**
+     * A table with the learned short prefixes and half of the learned suffixes,
+     * created again before every invocation because the benchmarks change it
+     */
+    @State(Scope.Thread)
+    public static class FreshTable {
+        OutputObservationTable<String, String> table;
+
+        @Setup(Level.Invocation)
+        public void create(ObservationTableBenchmark benchmark) {
+            this.table = benchmark.createTable(benchmark.initialSuffixes);
+        }
+    }
+
+    @Benchmark
+    public OutputObservationTable<String, String> initialize() {
+        return this.createTable(this.suffixes);
+    }
+
+    @Benchmark
+    public boolean addSuffixes(FreshTable fresh) {
+        return fresh.table.addSuffixes(this.extraSuffixes);
+    }
+
+    @Benchmark
+    public OutputObservationTable<String, String> makeShort(FreshTable fresh) {
+        fresh.table.makeShort(fresh.table.getLongPrefixRows().get(0));
+        return fresh.table;
+    }
+
+    @Benchmark
+    public List<List<OutputRow<String, String>>> findUnclosedRows() {
+        return this.learned.findUnclosedRows();
+    }
+
+    @Benchmark
+    public Multiset<Word<String>> findAllInconsistentRows() {
+        return this.learned.findAllInconsistentRows();
+    }
+}
@@ -0,0 +1,142 @@
+package com.example;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.learnlib.acex.AcexAnalyzers;
+import de.learnlib.algorithm.LearningAlgorithm.MealyLearner;
+import de.learnlib.filter.cache.mealy.MealyCacheOracle;
+import de.learnlib.filter.cache.mealy.MealyCaches;
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.oracle.membership.MealySimulatorOracle;
+import de.learnlib.query.Query;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.transducer.CompactMealy;
+import net.automatalib.word.Word;
+
+/**
+ * Benchmarks how the time needed to learn a model decreases when membership
+ * queries are answered by more workers of a {@link ParallelMembershipOracle}.
+ * <p>
+ * Every query to a worker takes an artificial latency, to imitate the round
+ * trip to a real system. Counterexamples are shortest separating words, so
+ * every run asks the same queries. With the {@code ParallelDecompose}
+ * algorithm, the components of the decomposer are also learned in parallel,
+ * using as many threads as there are workers.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class OracleThroughputBenchmark {
+
+    @Param("random-3-15-1")
+    public String model;
+
+    @Param({ "OL*", "Decompose", "ParallelDecompose" })
+    public String algorithm;
+
+    @Param({ "1", "2", "4", "8" })
+    public int workers;
+
+    @Param("100")
+    public long latencyMicros;
+
+    @Param("../../models")
+    public String modelDirectory;
+
+    private CompactMealy<String, String> target;
+    private PrintStream out;
+    private ExecutorService componentExecutor;
+    private ParallelMembershipOracle<String, String> pool;
+
+    @Setup(Level.Trial)
+    public void load() {
+        this.target = BenchmarkModels.load(this.modelDirectory, this.model);
+        this.out = BenchmarkModels.silence();
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOutput() {
+        System.setOut(this.out);
+    }
+
+    @Setup(Level.Iteration)
+    public void startWorkers() {
+        List<MembershipOracle<String, Word<String>>> delayed = new ArrayList<>(this.workers);
+        for (int i = 0; i < this.workers; i++) {
+            delayed.add(new LatencyOracle<>(new MealySimulatorOracle<>(this.target), this.latencyMicros));
+        }
+        this.pool = new ParallelMembershipOracle<>(delayed);
+        this.componentExecutor = ParallelMembershipOracle.platformThreads(this.workers);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopWorkers() {
+        this.pool.close();
+        this.componentExecutor.shutdown();
+    }
+
+    @Benchmark
+    public int learn() {
+        Alphabet<String> inputAlphabet = this.target.getInputAlphabet();
+        MealyLearner<String, String> learner;
+        if (this.algorithm.equals("Decompose")) {
+            learner = DynamicMealyDecomposer.createDynamicMealyDecomposerWithCache(inputAlphabet, this.pool,
+                    AcexAnalyzers.LINEAR_FWD);
+        } else if (this.algorithm.equals("ParallelDecompose")) {
+            learner = DynamicMealyDecomposer.createParallelDynamicMealyDecomposer(inputAlphabet, this.pool,
+                    AcexAnalyzers.LINEAR_FWD, this.componentExecutor);
+        } else {
+            MealyCacheOracle<String, String> cache = MealyCaches.createTreeCache(inputAlphabet, this.pool);
+            learner = new OutputLstar<>(inputAlphabet, cache, true, false);
+        }
+        return Main.learnLoop(learner, inputAlphabet, BenchmarkModels.separatingWordOracle(this.target),
+                this.target);
+    }
+
+    /**
+     * Membership oracle which waits for a fixed time before answering each query
+     */
+    static class LatencyOracle<I, O> implements MembershipOracle.MealyMembershipOracle<I, O> {
+        private final MembershipOracle<I, Word<O>> delegate;
+        private final long latencyNanos;
+
+        LatencyOracle(MembershipOracle<I, Word<O>> delegate, long latencyMicros) {
+            this.delegate = delegate;
+            this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        }
+
+        @Override
+        public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+            for (Query<I, Word<O>> query : queries) {
+                long deadline = System.nanoTime() + this.latencyNanos;
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(deadline - System.nanoTime());
+                }
+                this.delegate.processQuery(query);
+            }
+        }
+    }
+}
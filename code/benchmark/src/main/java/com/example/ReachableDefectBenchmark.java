@@ -0,0 +1,66 @@
+package com.example;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.learnlib.oracle.membership.MealySimulatorOracle;
+import de.learnlib.query.DefaultQuery;
+import net.automatalib.automaton.transducer.CompactMealy;
+import net.automatalib.word.Word;
+
+/**
+ * Benchmarks {@link OutputLstar#findReachableDefect()} after the model has been
+ * learned. The learned hypothesis has no defects, so every call searches all
+ * reachable states of the hypothesis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReachableDefectBenchmark {
+
+    @Param({ "random-2-5-1", "random-3-10-4", "random-5-5-2", "random-2-40-1" })
+    public String model;
+
+    @Param("../../models")
+    public String modelDirectory;
+
+    private OutputLstar<String, String> learner;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void learn() {
+        CompactMealy<String, String> target = BenchmarkModels.load(this.modelDirectory, this.model);
+        this.out = BenchmarkModels.silence();
+        this.learner = new OutputLstar<>(target.getInputAlphabet(), new MealySimulatorOracle<>(target), true, false);
+        this.learner.setCompileHypothesis(true);
+        Main.learnLoop(this.learner, target.getInputAlphabet(), BenchmarkModels.separatingWordOracle(target),
+                target);
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreOutput() {
+        System.setOut(this.out);
+    }
+
+    @Benchmark
+    public DefaultQuery<String, Word<String>> findReachableDefect() {
+        return this.learner.findReachableDefect();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import de.learnlib.algorithm.LearningAlgorithm.MealyLearner;
+import de.learnlib.filter.cache.mealy.MealyCacheOracle;
+import de.learnlib.filter.cache.mealy.MealyCaches;
+import de.learnlib.filter.statistic.oracle.MealyHistogramOracle;
+import de.learnlib.oracle.EquivalenceOracle.MealyEquivalenceOracle;
+import de.learnlib.oracle.membership.MealySimulatorOracle;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.transducer.CompactMealy;
+
+/**
+ * Learns many models with the same algorithm, several at the same time, and
+ * writes the results to a csv file with the columns of the files in
+ * {@code results/}.
+ * <p>
+ * Every model is learned in a JVM of its own, so that it has its own oracles
+ * and counters, and so that its time and memory can be limited: a model that
+ * takes longer than the timeout is stopped, and a model that needs more memory
+ * than the maximum heap size fails without affecting the other models. The
+ * number of models learned at the same time is bounded by the number of
+ * workers.
+ * <p>
+ * The rows of the csv file are in the order of the models, whatever order they
+ * finish in. Models that could not be learned get a row with only their name.
+ * Random equivalence testing uses a fixed seed, so that the results of a model
+ * do not depend on the run either.
+ */
+public class BatchRunner {
+
+    public static final long DEFAULT_TIMEOUT_SECONDS = 3600;
+    /** Maximum heap size of the JVM learning a model, in the format of -Xmx */
+    public static final String DEFAULT_MAX_HEAP = "4g";
+
+    private static final String OUTPUT_LSTAR_HEADER = "Model,Stages,States,Short rows,Inconsistent count,"
+            + "Zero outputs count,Two outputs count,Learning queries,Learning symbols,Testing queries,Testing symbols";
+    private static final String HEADER = "Model,Stages,States,Learning queries,Learning symbols,"
+            + "Testing queries,Testing symbols";
+    private static final long SEED = 42;
+
+    private final String algorithm;
+    private final Set<Main.Option> options;
+    private final int workers;
+    private final long timeoutSeconds;
+    private final String maxHeap;
+
+    /**
+     * @param algorithm      The name of the algorithm to be used, as in
+     *                       {@link Main}
+     * @param options        The changes to the setup of the results in
+     *                       {@code results/}, see {@link Main.Option}
+     * @param workers        The number of models learned at the same time
+     * @param timeoutSeconds The time after which learning a model is stopped
+     * @param maxHeap        The maximum heap size for learning a model, in the
+     *                       format of -Xmx, for example {@code 4g}
+     */
+    public BatchRunner(String algorithm, Set<Main.Option> options, int workers, long timeoutSeconds,
+            String maxHeap) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        if (timeoutSeconds <= 0) {
+            throw new IllegalArgumentException("The timeout should be positive, but was " + timeoutSeconds);
+        }
+        this.algorithm = algorithm;
+        this.options = options;
+        this.workers = workers;
+        this.timeoutSeconds = timeoutSeconds;
+        this.maxHeap = maxHeap;
+    }
+
+    public BatchRunner(String algorithm, Set<Main.Option> options, int workers) {
+        this(algorithm, options, workers, DEFAULT_TIMEOUT_SECONDS, DEFAULT_MAX_HEAP);
+    }
+
+    /**
+     * Learns all models and writes a row for every model to the csv file. Rows are
+     * written as soon as the rows of all previous models are known, so the file
+     * holds the results so far if the run is stopped.
+     *
+     * @param models The files of the models to be learned
+     * @param csv    The file to write the results to, which is overwritten
+     * @throws IOException If the csv file could not be written
+     */
+    public void run(List<Path> models, Path csv) throws IOException {
+        ExecutorService executor = ParallelMembershipOracle.platformThreads(this.workers);
+        CompletionService<Integer> completed = new ExecutorCompletionService<>(executor);
+        String[] rows = new String[models.size()];
+        for (int i = 0; i < models.size(); i++) {
+            int index = i;
+            completed.submit(() -> {
+                rows[index] = this.learnInChild(models.get(index));
+                return index;
+            });
+        }
+        if (csv.getParent() != null) {
+            Files.createDirectories(csv.getParent());
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.append(this.isOutputLstar() ? OUTPUT_LSTAR_HEADER : HEADER).append('\n');
+            int written = 0;
+            for (int done = 1; done <= models.size(); done++) {
+                int index = completed.take().get();
+                System.out.println("[" + done + "/" + models.size() + "] " + models.get(index).getFileName()
+                        + (rows[index].indexOf(',') < 0 ? " failed" : " learned"));
+                while (written < rows.length && rows[written] != null) {
+                    writer.append(rows[written++]).append('\n');
+                }
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while learning the models", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not learn a model", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean isOutputLstar() {
+        return this.algorithm.equals("OLstar") || this.algorithm.equals("OL*");
+    }
+
+    /**
+     * Learns a model in a new JVM.
+     *
+     * @param model The file of the model
+     * @return The row for the model, containing only its name if it could not be
+     *         learned
+     */
+    private String learnInChild(Path model) throws IOException, InterruptedException {
+        String name = model.getFileName().toString();
+        Path result = Files.createTempFile("result", ".csv");
+        Path errors = Files.createTempFile("errors", ".txt");
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            List<String> command = new ArrayList<>(List.of(java, "-Xmx" + this.maxHeap, "-cp",
+                    System.getProperty("java.class.path"), BatchRunner.class.getName(), model.toString(),
+                    this.algorithm, result.toString()));
+            this.options.forEach(option -> command.add(option.getArgument()));
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(errors.toFile())
+                    .start();
+            if (!process.waitFor(this.timeoutSeconds, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+                System.err.println(name + ": stopped after " + this.timeoutSeconds + " s");
+                return name;
+            }
+            List<String> lines = Files.readAllLines(result, StandardCharsets.UTF_8);
+            if (process.exitValue() != 0 || lines.isEmpty()) {
+                List<String> errorLines = Files.readAllLines(errors, StandardCharsets.UTF_8);
+                String reason = errorLines.stream().filter(line -> line.contains("OutOfMemoryError")).findFirst()
+                        .orElse(errorLines.isEmpty() ? "exit code " + process.exitValue() : errorLines.get(0));
+                System.err.println(name + ": " + reason);
+                return name;
+            }
+            return lines.get(0);
+        } finally {
+            Files.deleteIfExists(result);
+            Files.deleteIfExists(errors);
+        }
+    }
+
+    /**
+     * Learns a single model and writes its row to a file. This is the entry point
+     * of the JVMs started by {@link #run(List, Path)}.
+     *
+     * @param args The file of the model, the name of the algorithm and the file
+     *             to write the row to, followed by the arguments of the options
+     * @throws IOException If the model could not be read or the row could not be
+     *                     written
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        Set<Main.Option> options = Main.Option.parse(arguments);
+        if (arguments.size() != 3) {
+            System.err.println("Usage: BatchRunner <model> <algorithm> <result file> [options]");
+            System.exit(1);
+        }
+        File model = new File(arguments.get(0));
+        CompactMealy<String, String> target = CircuitParser.readMealy(model.toPath());
+        String row = learn(target, arguments.get(1), model.getName(), options);
+        Files.writeString(Paths.get(arguments.get(2)), row + "\n", StandardCharsets.UTF_8);
+    }
+
+    private static <I, O> String learn(CompactMealy<I, O> target, String algorithm, String name,
+            Set<Main.Option> options) {
+        Alphabet<I> inputAlphabet = target.getInputAlphabet();
+        MealySimulatorOracle<I, O> simulator = new MealySimulatorOracle<>(target);
+        // The histograms count both the queries and their symbols
+        MealyHistogramOracle<I, O> learningOracle = new MealyHistogramOracle<>(simulator, "Learning");
+        MealyCacheOracle<I, O> cacheOracle = MealyCaches.createTreeCache(inputAlphabet, learningOracle);
+        MealyHistogramOracle<I, O> testingOracle = new MealyHistogramOracle<>(simulator, "Testing");
+        MealyCacheOracle<I, O> testingCacheOracle = MealyCaches.createTreeCache(inputAlphabet, testingOracle);
+        MealyLearner<I, O> learner = Main.createLearner(algorithm, inputAlphabet, learningOracle, cacheOracle, null,
+                options);
+        LearningMetrics metrics = new LearningMetrics();
+        if (learner instanceof OutputLstar) {
+            ((OutputLstar<I, O>) learner).setListener(metrics);
+        }
+        MealyEquivalenceOracle<I, O> eqOracle = Main.createEquivalenceOracle(learner, testingCacheOracle,
+                new Random(SEED), 1, options);
+        int stages = Main.learnLoop(learner, inputAlphabet, eqOracle, target);
+
+        List<Object> row = new ArrayList<>();
+        row.add(name);
+        row.add(stages);
+        row.add(learner.getHypothesisModel().size());
+        if (learner instanceof OutputLstar) {
+            OutputLstar<I, O> outputLearner = (OutputLstar<I, O>) learner;
+            row.add(outputLearner.getObservationTable().getShortPrefixRows().size());
+            row.add(metrics.getCount(LearningListener.Event.INCONSISTENCY));
+            row.add(metrics.getCount(LearningListener.Event.ZERO_OUTPUTS));
+            row.add(metrics.getCount(LearningListener.Event.MULTIPLE_OUTPUTS));
+        }
+        row.add(learningOracle.getStatisticalData().getSize());
+        row.add(learningOracle.getStatisticalData().getSum());
+        row.add(testingOracle.getStatisticalData().getSize());
+        row.add(testingOracle.getStatisticalData().getSum());
+        return String.join(",", row.stream().map(String::valueOf).toList());
+    }
+}
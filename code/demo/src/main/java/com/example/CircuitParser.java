@@ -1,131 +1,341 @@
 package com.example;
 
-import com.google.common.collect.Lists;
 import net.automatalib.automaton.transducer.CompactMealy;
-import net.automatalib.util.automaton.builder.AutomatonBuilders;
-import net.automatalib.util.automaton.builder.MealyBuilder;
 import net.automatalib.alphabet.Alphabet;
 import net.automatalib.alphabet.Alphabets;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
 
 /*
  * A simple way to parse the dot files as occurring in the benchmark suite at http://automata.cs.ru.nl/MealyMachines
- * This is specialized for the circuits from that suite. The output is considered as a bitvector, instead
- * of a unstructured string. All transitions in a circuit has the same length of bitvector.
+ * and the random models in the models folder. For circuits from that suite, the output can be considered as a
+ * bitvector, instead of a unstructured string. All transitions in a circuit has the same length of bitvector.
+ *
+ * The file is read in blocks of bytes, and every line is parsed without creating strings for it. States and
+ * symbols are interned to int ids while reading, so only one string is created for every distinct name, and the
+ * transitions are kept as ints until the machine is built.
+ *
+ * States are numbered in the order they first appear, and the inputs are ordered as in DOTParsers.mealy(), so the
+ * machines are the same as those read by AutomataLib and the learners ask the same queries.
  */
 public class CircuitParser {
-    public static class Edge {
-        public final String from;
-        public final String to;
-        public final String label;
 
-        Edge(String b, String e, String l) {
-            from = b;
-            to = e;
-            label = l;
+    /** Number of bits of a circuit output that form one output symbol */
+    public static final int DEFAULT_GROUP_WIDTH = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] LABEL = "label=\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] START = "__start".getBytes(StandardCharsets.US_ASCII);
+
+    private final Interner states = new Interner();
+    private final Interner inputs = new Interner();
+    private final Interner outputs = new Interner();
+    /** For every transition: source, input, output and target */
+    private int[] transitions = new int[1024];
+    private int transitionCount = 0;
+    private int initialState = -1;
+
+    private CircuitParser(Path filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(filename, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            int length = 0;
+            while (true) {
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                length = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (bytes[i] == '\n') {
+                        this.parseLine(bytes, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                // Keep the incomplete last line for the next block
+                System.arraycopy(bytes, lineStart, bytes, 0, length - lineStart);
+                length -= lineStart;
+                if (length == buffer.capacity()) {
+                    buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length * 2));
+                }
+                buffer.position(length);
+            }
+            this.parseLine(buffer.array(), 0, length);
         }
     }
 
-    public final Set<String> nodes;
-    public final Set<Edge> edges;
-    public String initialState;
-    public int dimensionality = 0;
-
-    CircuitParser(Path filename) throws IOException {
-        nodes = new HashSet<>();
-        edges = new HashSet<>();
+    /**
+     * Reads a Mealy machine with plain input and output symbols.
+     *
+     * @param filename The dot file
+     * @return The machine
+     * @throws IOException If the file could not be read
+     */
+    public static CompactMealy<String, String> readMealy(Path filename) throws IOException {
+        CircuitParser parser = new CircuitParser(filename);
+        List<String> outputSymbols = new ArrayList<>(parser.outputs.size());
+        for (int i = 0; i < parser.outputs.size(); i++) {
+            outputSymbols.add(parser.outputs.get(i));
+        }
+        return parser.createMachine(outputSymbols);
+    }
 
-        Scanner s = new Scanner(filename);
-        while (s.hasNextLine()) {
-            String line = s.nextLine();
+    /**
+     * Reads a circuit, whose outputs are bitvectors. Every output is split into
+     * groups of bits, which become the output symbols of the machine.
+     *
+     * @param filename   The dot file
+     * @param groupWidth The number of bits in a group, the last group may be
+     *                   shorter
+     * @return The machine
+     * @throws IOException If the file could not be read
+     */
+    public static CompactMealy<String, List<String>> readCircuit(Path filename, int groupWidth) throws IOException {
+        if (groupWidth <= 0) {
+            throw new IllegalArgumentException("The group width should be positive, but was " + groupWidth);
+        }
+        CircuitParser parser = new CircuitParser(filename);
+        List<List<String>> outputSymbols = new ArrayList<>(parser.outputs.size());
+        for (int i = 0; i < parser.outputs.size(); i++) {
+            outputSymbols.add(stringToList(parser.outputs.get(i), groupWidth));
+        }
+        return parser.createMachine(outputSymbols);
+    }
 
-            if (!line.contains("label"))
-                continue;
+    private <O> CompactMealy<String, O> createMachine(List<O> outputSymbols) {
+        if (this.initialState < 0) {
+            throw new IllegalArgumentException("The file does not contain any transitions");
+        }
+        // A hash set of the inputs in the order they were read, as DOTParsers does
+        Set<String> inputSet = new HashSet<>();
+        for (int i = 0; i < this.inputs.size(); i++) {
+            inputSet.add(this.inputs.get(i));
+        }
+        Alphabet<String> alphabet = Alphabets.fromCollection(inputSet);
+        int[] inputIndex = new int[this.inputs.size()];
+        for (int i = 0; i < this.inputs.size(); i++) {
+            inputIndex[i] = alphabet.getSymbolIndex(this.inputs.get(i));
+        }
 
-            if (line.contains("->")) {
-                int e1 = line.indexOf('-');
-                int e2 = line.indexOf('[');
-                int b3 = line.indexOf('"');
-                int e3 = line.lastIndexOf('"');
+        CompactMealy<String, O> machine = new CompactMealy<>(alphabet, this.states.size());
+        for (int s = 0; s < this.states.size(); s++) {
+            machine.addState();
+        }
+        machine.setInitialState(this.initialState);
+        for (int t = 0; t < this.transitionCount; t += 4) {
+            machine.setTransition(this.transitions[t], inputIndex[this.transitions[t + 1]], this.transitions[t + 3],
+                    outputSymbols.get(this.transitions[t + 2]));
+        }
+        return machine;
+    }
 
-                String from = line.substring(0, e1).trim();
-                String to = line.substring(e1 + 2, e2).trim();
-                String label = line.substring(b3 + 1, e3).trim();
+    // This function will convert outputs to composed outputs.
+    static List<String> stringToList(String str, int groupWidth) {
+        List<String> out = new ArrayList<>((str.length() + groupWidth - 1) / groupWidth);
+        // this is used to group bits (so not to get too many components)
+        for (int i = 0; i < str.length(); i += groupWidth) {
+            out.add(str.substring(i, Math.min(i + groupWidth, str.length())));
+        }
+        return out;
+    }
 
-                if (dimensionality == 0) {
-                    String[] io = label.split("/");
-                    String output = io[1].trim();
-                    dimensionality = stringToList(output).size();
+    /**
+     * Parses a line containing a node or an edge. Other lines are ignored.
+     */
+    private void parseLine(byte[] line, int start, int end) {
+        int arrow = indexOf(line, start, end, (byte) '-', (byte) '>');
+        int attributes = indexOf(line, start, end, (byte) '[', (byte) '[');
+        if (arrow < 0) {
+            if (attributes > start) { // A node, which is only interned to keep the order of the states
+                int nameStart = skipSpaces(line, start, attributes);
+                int nameEnd = trimEnd(line, nameStart, attributes);
+                if (nameEnd > nameStart && !isKeyword(line, nameStart, nameEnd)
+                        && !startsWith(line, nameStart, nameEnd, START)) {
+                    this.internState(line, nameStart, nameEnd);
                 }
+            }
+            return;
+        }
+        int fromStart = skipSpaces(line, start, arrow);
+        int fromEnd = trimEnd(line, fromStart, arrow);
+        int toStart = skipSpaces(line, arrow + 2, end);
+        int toEnd = toStart;
+        while (toEnd < end && line[toEnd] != '[' && line[toEnd] != ';' && line[toEnd] != ' ') {
+            toEnd++;
+        }
+        int label = attributes < 0 ? -1 : indexOf(line, attributes, end, LABEL);
+        if (label < 0) {
+            // The edge from the start marker points to the initial state
+            if (startsWith(line, fromStart, fromEnd, START)) {
+                this.initialState = this.internState(line, toStart, toEnd);
+            }
+            return;
+        }
+        int labelStart = label + LABEL.length;
+        int labelEnd = labelStart;
+        while (labelEnd < end && line[labelEnd] != '"') {
+            labelEnd++;
+        }
+        int slash = labelStart;
+        while (slash < labelEnd && line[slash] != '/') {
+            slash++;
+        }
+        int from = this.internState(line, fromStart, fromEnd);
+        int to = this.internState(line, toStart, toEnd);
+        int inputStart = skipSpaces(line, labelStart, slash);
+        int input = this.inputs.intern(line, inputStart, trimEnd(line, inputStart, slash));
+        int outputStart = skipSpaces(line, Math.min(slash + 1, labelEnd), labelEnd);
+        int output = this.outputs.intern(line, outputStart, trimEnd(line, outputStart, labelEnd));
 
-                // First read state will be the initial one.
-                if (initialState == null)
-                    initialState = from;
+        // First read state will be the initial one, unless there is a start marker.
+        if (this.initialState < 0) {
+            this.initialState = from;
+        }
+        if (this.transitionCount + 4 > this.transitions.length) {
+            this.transitions = Arrays.copyOf(this.transitions, this.transitions.length * 2);
+        }
+        this.transitions[this.transitionCount++] = from;
+        this.transitions[this.transitionCount++] = input;
+        this.transitions[this.transitionCount++] = output;
+        this.transitions[this.transitionCount++] = to;
+    }
 
-                nodes.add(from);
-                nodes.add(to);
-                edges.add(new Edge(from, to, label));
-            } else {
-                int end = line.indexOf('[');
-                if (end <= 0)
-                    continue;
-                String node = line.substring(0, end).trim();
+    private int internState(byte[] line, int start, int end) {
+        if (end - start >= 2 && line[start] == '"' && line[end - 1] == '"') {
+            return this.states.intern(line, start + 1, end - 1);
+        }
+        return this.states.intern(line, start, end);
+    }
 
-                nodes.add(node);
+    private static boolean isKeyword(byte[] line, int start, int end) {
+        String[] keywords = { "node", "edge", "graph" };
+        for (String keyword : keywords) {
+            if (end - start == keyword.length()
+                    && startsWith(line, start, end, keyword.getBytes(StandardCharsets.US_ASCII))) {
+                return true;
             }
         }
-        s.close();
+        return false;
     }
 
-    @SuppressWarnings("null")
-    CompactMealy<String, List<String>> createMachine() {
-        Set<String> inputs = new HashSet<>();
-        for (Edge e : edges) {
-            String[] io = e.label.split("/");
-            inputs.add(io[0].trim());
+    private static int skipSpaces(byte[] line, int start, int end) {
+        while (start < end && (line[start] == ' ' || line[start] == '\t')) {
+            start++;
         }
+        return start;
+    }
 
-        List<String> inputList = Lists.newArrayList(inputs.iterator());
-        Alphabet<String> alphabet = Alphabets.fromList(inputList);
+    private static int trimEnd(byte[] line, int start, int end) {
+        while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\t' || line[end - 1] == '\r')) {
+            end--;
+        }
+        return end;
+    }
 
-        MealyBuilder<?, String, ?, List<String>, CompactMealy<String, List<String>>>.MealyBuilder__1 builder = AutomatonBuilders
-                .<String, List<String>>newMealy(alphabet).withInitial(initialState);
+    private static boolean startsWith(byte[] line, int start, int end, byte[] prefix) {
+        return end - start >= prefix.length
+                && Arrays.equals(line, start, start + prefix.length, prefix, 0, prefix.length);
+    }
 
-        for (Edge e : edges) {
-            String[] io = e.label.split("/");
-            String input = io[0].trim();
-            String output = io[1].trim();
+    private static int indexOf(byte[] line, int start, int end, byte first, byte second) {
+        for (int i = start; i < end; i++) {
+            if (line[i] == first && (first == second || (i + 1 < end && line[i + 1] == second))) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-            List<String> outputAsList = stringToList(output);
+    private static int indexOf(byte[] line, int start, int end, byte[] pattern) {
+        for (int i = start; i + pattern.length <= end; i++) {
+            if (Arrays.equals(line, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-            builder.from(e.from).on(input).withOutput(outputAsList).to(e.to);
+    /**
+     * Assigns consecutive ids to byte sequences. The bytes of every distinct
+     * sequence are copied once, and decoded to a string once.
+     */
+    private static final class Interner {
+        private byte[] pool = new byte[1024];
+        private int poolSize = 0;
+        private int[] offsets = new int[64];
+        private final List<String> values = new ArrayList<>();
+        /** Open addressing index holding ids plus one */
+        private int[] slots = new int[128];
+
+        int size() {
+            return this.values.size();
         }
 
-        return builder.create();
-    }
+        String get(int id) {
+            return this.values.get(id);
+        }
 
-    // This function will convert outputs to composed outputs.
-    List<String> stringToList(String str) {
-        List<String> out = Lists.newArrayListWithCapacity(str.length());
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < str.length(); i++) {
-            sb.append(str.charAt(i));
-            // this is used to group bits (so not to get too many components)
-            // TODO: make this a parameter
-            if (sb.length() >= 2) {
-                out.add(sb.toString());
-                sb = new StringBuilder();
+        int intern(byte[] bytes, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            hash ^= hash >>> 16;
+            int mask = this.slots.length - 1;
+            int slot = hash & mask;
+            while (this.slots[slot] != 0) {
+                int id = this.slots[slot] - 1;
+                if (Arrays.equals(this.pool, this.offsets[id], this.offsets[id + 1], bytes, start, end)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+            int id = this.values.size();
+            if (this.poolSize + end - start > this.pool.length) {
+                this.pool = Arrays.copyOf(this.pool, Math.max(this.pool.length * 2, this.poolSize + end - start));
             }
+            System.arraycopy(bytes, start, this.pool, this.poolSize, end - start);
+            if (id + 2 > this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+            }
+            this.offsets[id] = this.poolSize;
+            this.poolSize += end - start;
+            this.offsets[id + 1] = this.poolSize;
+            this.values.add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            this.slots[slot] = id + 1;
+            if (2 * this.values.size() > this.slots.length) {
+                this.rehash();
+            }
+            return id;
         }
-        if (sb.length() > 0) {
-            out.add(sb.toString());
+
+        private void rehash() {
+            int[] newSlots = new int[this.slots.length * 2];
+            int mask = newSlots.length - 1;
+            for (int id = 0; id < this.values.size(); id++) {
+                int hash = 1;
+                for (int i = this.offsets[id]; i < this.offsets[id + 1]; i++) {
+                    hash = 31 * hash + this.pool[i];
+                }
+                hash ^= hash >>> 16;
+                int slot = hash & mask;
+                while (newSlots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                newSlots[slot] = id + 1;
+            }
+            this.slots = newSlots;
         }
-        return out;
     }
 }
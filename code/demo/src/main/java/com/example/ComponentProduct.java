@@ -0,0 +1,754 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The synchronous product of several components, each of which is a Mealy
+ * machine with boolean outputs. In every transition of the product, every
+ * component takes the same input, and the number of components that output
+ * true is the number of active components of the transition.
+ * <p>
+ * Components are given as int-encoded transition tables: for component
+ * {@code c}, state {@code s} and input {@code a}, the successor is
+ * {@code successors[c][s * inputCount + a]} and the output is
+ * {@code outputs[c][s * inputCount + a]}.
+ * <p>
+ * States of the product are tuples of component states. If the states of all
+ * components fit in 64 bits together, a tuple is packed into a {@code long},
+ * otherwise tuples are stored back to back in a single {@code int[]}. States
+ * are numbered in the order in which they are found, so that the breadth first
+ * search needs no queue: the frontier is the range of states that have been
+ * found but not expanded yet. Every state stores its parent and the input from
+ * the parent, from which access sequences are rebuilt when needed.
+ * <p>
+ * A memory budget can be set for the states. When the states no longer fit in
+ * the budget, they are moved to a temporary file, and the set of visited states
+ * is replaced by a bloom filter of the size of the budget. The search then
+ * continues with bounded memory, at the cost of possibly skipping states that
+ * the filter wrongly reports as visited. Searches that spilled are therefore
+ * not exhaustive, which {@link #isExhaustive()} reports. The temporary file is
+ * removed when the next search starts or when the product is closed.
+ */
+public class ComponentProduct implements AutoCloseable {
+
+    /** Without a budget, states are always kept in memory */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final int inputCount;
+    private final int componentCount;
+    private final int[] initialStates;
+    private final int[][] successors;
+    private final boolean[][] outputs;
+    /** Bits per component state in a packed tuple, or 0 if tuples do not fit in a long */
+    private final int bitsPerComponent;
+
+    private final long memoryBudget;
+    private final Path spillDirectory;
+
+    private StateStore store;
+
+    // The states explored on demand, see getSuccessor
+    private MemoryStore lazyStore;
+    private int[] lazySuccessors;
+    private int[] lazyFirstActive;
+    private int[] lazyCurrent;
+    private int[] lazyNext;
+
+    /**
+     * @param inputCount    The size of the input alphabet
+     * @param initialStates The initial state of every component
+     * @param successors    The successor table of every component
+     * @param outputs       The output table of every component
+     */
+    public ComponentProduct(int inputCount, int[] initialStates, int[][] successors, boolean[][] outputs) {
+        this(inputCount, initialStates, successors, outputs, UNLIMITED, null);
+    }
+
+    /**
+     * @param inputCount     The size of the input alphabet
+     * @param initialStates  The initial state of every component
+     * @param successors     The successor table of every component
+     * @param outputs        The output table of every component
+     * @param memoryBudget   The number of bytes the states may use before they are
+     *                       moved to disk
+     * @param spillDirectory The directory for the temporary file, or null for the
+     *                       default temporary directory
+     */
+    public ComponentProduct(int inputCount, int[] initialStates, int[][] successors, boolean[][] outputs,
+            long memoryBudget, Path spillDirectory) {
+        if (successors.length != initialStates.length || outputs.length != initialStates.length) {
+            throw new IllegalArgumentException("Every component needs an initial state, successors and outputs");
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget should be positive, but was " + memoryBudget);
+        }
+        this.inputCount = inputCount;
+        this.componentCount = initialStates.length;
+        this.initialStates = initialStates;
+        this.successors = successors;
+        this.outputs = outputs;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        int maxStates = 1;
+        for (int[] table : successors) {
+            maxStates = Math.max(maxStates, inputCount == 0 ? 1 : table.length / inputCount);
+        }
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxStates - 1));
+        this.bitsPerComponent = (long) bits * this.componentCount <= 64 ? bits : 0;
+    }
+
+    /**
+     * Searches the reachable transitions of the product in breadth first order,
+     * for a transition whose number of active components satisfies a condition.
+     *
+     * @param condition The condition on the number of active components
+     * @return The inputs of a shortest word ending in such a transition, or null
+     *         if there is none
+     */
+    public int[] findTransition(IntPredicate condition) {
+        return this.search(condition, null);
+    }
+
+    /**
+     * Explores all reachable states of the product, and records the transitions
+     * between them, with the states numbered in breadth first order.
+     *
+     * @return The transitions, or null if the states did not fit in the memory
+     *         budget
+     */
+    public Transitions compile() {
+        Transitions transitions = new Transitions(this.inputCount);
+        this.search(active -> false, transitions);
+        if (transitions.stateCount < 0) {
+            return null;
+        }
+        transitions.stateCount = (int) this.store.size();
+        return transitions;
+    }
+
+    private int[] search(IntPredicate condition, Transitions transitions) {
+        this.reset();
+        this.store.add(this.initialStates, -1, -1);
+        int[] current = new int[this.componentCount];
+        int[] succ = new int[this.componentCount];
+        for (long state = 0; state < this.store.size(); state++) {
+            this.store.tuple(state, current);
+            for (int a = 0; a < this.inputCount; a++) {
+                int active = 0;
+                for (int c = 0; c < this.componentCount; c++) {
+                    int index = current[c] * this.inputCount + a;
+                    succ[c] = this.successors[c][index];
+                    if (this.outputs[c][index]) {
+                        active++;
+                    }
+                }
+                if (condition.test(active)) {
+                    return this.accessSequence(state, a);
+                }
+                long successor = this.store.addIfAbsent(succ, state, a);
+                if (transitions != null) {
+                    transitions.add(state, a, successor, this.firstActive(current, a));
+                }
+            }
+            if (this.store.bytesUsed() > this.memoryBudget && this.store instanceof MemoryStore) {
+                if (transitions != null) {
+                    // Without the exact index, the successors can no longer be numbered
+                    transitions.stateCount = -1;
+                    return null;
+                }
+                this.store = new SpilledStore((MemoryStore) this.store);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Explores all reachable states of the product.
+     *
+     * @return The number of reachable states
+     */
+    public long explore() {
+        this.findTransition(active -> false);
+        return this.getStateCount();
+    }
+
+    /**
+     * @return The number of reachable states found by the last search
+     */
+    public long getStateCount() {
+        return this.store == null ? 0 : this.store.size();
+    }
+
+    /**
+     * @return False if the last search ran out of memory and may have skipped
+     *         states
+     */
+    public boolean isExhaustive() {
+        return !(this.store instanceof SpilledStore);
+    }
+
+    /**
+     * Reads a state found by the last search
+     *
+     * @param state The number of the state
+     * @param tuple Array in which the component states are stored
+     */
+    public void getState(long state, int[] tuple) {
+        this.store.tuple(state, tuple);
+    }
+
+    public int getComponentCount() {
+        return this.componentCount;
+    }
+
+    /**
+     * Returns a successor in the product, which is explored on demand. The states
+     * explored in this way are numbered in the order in which they are first
+     * reached, with the initial state as state 0. They are kept apart from the
+     * states of the searches, and every transition is computed only once. The
+     * memory budget does not apply to them.
+     *
+     * @param state A state explored on demand
+     * @param input The index of the input
+     * @return The successor
+     */
+    public synchronized int getSuccessor(int state, int input) {
+        int index = this.expand(state, input);
+        return this.lazySuccessors[index];
+    }
+
+    /**
+     * @param state A state explored on demand, see {@link #getSuccessor(int, int)}
+     * @param input The index of the input
+     * @return The first component that is active in the transition, or -1 if
+     *         there is none
+     */
+    public synchronized int getFirstActive(int state, int input) {
+        int index = this.expand(state, input);
+        return this.lazyFirstActive[index];
+    }
+
+    /**
+     * @return The number of states explored on demand so far, which is at least
+     *         one for the initial state
+     */
+    public synchronized int getExploredCount() {
+        this.expand(0, -1);
+        return this.lazyStore.count;
+    }
+
+    /**
+     * Computes a transition that was not computed before
+     *
+     * @param input The index of the input, or -1 to only make sure that the
+     *              initial state is explored
+     * @return The index of the transition in the lazy tables
+     */
+    private int expand(int state, int input) {
+        if (this.lazyStore == null) {
+            this.lazyStore = this.bitsPerComponent > 0 ? new PackedStore() : new TupleStore();
+            this.lazyStore.add(this.initialStates, -1, -1);
+            this.lazySuccessors = new int[64 * this.inputCount];
+            this.lazyFirstActive = new int[64 * this.inputCount];
+            Arrays.fill(this.lazySuccessors, -1);
+            this.lazyCurrent = new int[this.componentCount];
+            this.lazyNext = new int[this.componentCount];
+        }
+        if (input < 0) {
+            return -1;
+        }
+        int index = state * this.inputCount + input;
+        if (index >= this.lazySuccessors.length) {
+            int length = Math.max(index + 1, this.lazySuccessors.length * 2);
+            int oldLength = this.lazySuccessors.length;
+            this.lazySuccessors = Arrays.copyOf(this.lazySuccessors, length);
+            this.lazyFirstActive = Arrays.copyOf(this.lazyFirstActive, length);
+            Arrays.fill(this.lazySuccessors, oldLength, length, -1);
+        }
+        if (this.lazySuccessors[index] < 0) {
+            this.lazyStore.tuple(state, this.lazyCurrent);
+            for (int c = 0; c < this.componentCount; c++) {
+                this.lazyNext[c] = this.successors[c][this.lazyCurrent[c] * this.inputCount + input];
+            }
+            this.lazyFirstActive[index] = this.firstActive(this.lazyCurrent, input);
+            this.lazySuccessors[index] = (int) this.lazyStore.addIfAbsent(this.lazyNext, state, input);
+        }
+        return index;
+    }
+
+    private int firstActive(int[] tuple, int input) {
+        for (int c = 0; c < this.componentCount; c++) {
+            if (this.outputs[c][tuple[c] * this.inputCount + input]) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the states of the last search from disk, if they were moved there.
+     * The states explored on demand are kept in memory and stay available.
+     */
+    @Override
+    public void close() {
+        if (this.store != null) {
+            this.store.close();
+            this.store = null;
+        }
+    }
+
+    private void reset() {
+        if (this.store != null) {
+            this.store.close();
+        }
+        this.store = this.bitsPerComponent > 0 ? new PackedStore() : new TupleStore();
+    }
+
+    private int[] accessSequence(long state, int lastInput) {
+        int length = 1;
+        for (long s = state; this.store.parent(s) >= 0; s = this.store.parent(s)) {
+            length++;
+        }
+        int[] word = new int[length];
+        word[length - 1] = lastInput;
+        int position = length - 2;
+        for (long s = state; this.store.parent(s) >= 0; s = this.store.parent(s)) {
+            word[position--] = this.store.parentInput(s);
+        }
+        return word;
+    }
+
+    private long pack(int[] tuple) {
+        long key = 0;
+        for (int c = 0; c < this.componentCount; c++) {
+            key |= (long) tuple[c] << (c * this.bitsPerComponent);
+        }
+        return key;
+    }
+
+    private void unpack(long key, int[] tuple) {
+        long mask = (1L << this.bitsPerComponent) - 1;
+        for (int c = 0; c < this.componentCount; c++) {
+            tuple[c] = (int) ((key >>> (c * this.bitsPerComponent)) & mask);
+        }
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private long hash(int[] tuple) {
+        if (this.bitsPerComponent > 0) {
+            return mix(this.pack(tuple));
+        }
+        long h = 1;
+        for (int value : tuple) {
+            h = mix(h * 31 + value);
+        }
+        return h;
+    }
+
+    /**
+     * The transition table of the reachable part of the product
+     */
+    public static final class Transitions {
+        private final int inputCount;
+        private int stateCount;
+        private int[] successors;
+        private int[] firstActive;
+
+        private Transitions(int inputCount) {
+            this.inputCount = inputCount;
+            this.successors = new int[64 * inputCount];
+            this.firstActive = new int[64 * inputCount];
+        }
+
+        private void add(long state, int input, long successor, int active) {
+            int index = (int) state * this.inputCount + input;
+            if (index >= this.successors.length) {
+                this.successors = Arrays.copyOf(this.successors, this.successors.length * 2);
+                this.firstActive = Arrays.copyOf(this.firstActive, this.firstActive.length * 2);
+            }
+            this.successors[index] = (int) successor;
+            this.firstActive[index] = active;
+        }
+
+        /**
+         * @return The number of reachable states, where state 0 is the initial
+         *         state
+         */
+        public int getStateCount() {
+            return this.stateCount;
+        }
+
+        public int getSuccessor(int state, int input) {
+            return this.successors[state * this.inputCount + input];
+        }
+
+        /**
+         * @return The first component that is active in the transition, or -1 if
+         *         there is none
+         */
+        public int getFirstActive(int state, int input) {
+            return this.firstActive[state * this.inputCount + input];
+        }
+    }
+
+    /**
+     * The states found by a search, numbered in the order they were found
+     */
+    private interface StateStore {
+        long size();
+
+        void tuple(long state, int[] into);
+
+        long parent(long state);
+
+        int parentInput(long state);
+
+        void add(int[] tuple, long parent, int input);
+
+        /**
+         * @return The number of the state, or -1 if it is not known
+         */
+        long addIfAbsent(int[] tuple, long parent, int input);
+
+        long bytesUsed();
+
+        default void close() {
+        }
+    }
+
+    /**
+     * In-memory states with an open addressing index that holds state numbers
+     * plus one
+     */
+    private abstract class MemoryStore implements StateStore {
+        int[] parents = new int[64];
+        int[] parentInputs = new int[64];
+        int[] slots = new int[128];
+        int count = 0;
+
+        abstract boolean matches(int state, int[] tuple);
+
+        abstract void store(int state, int[] tuple);
+
+        abstract void grow(int capacity);
+
+        @Override
+        public long size() {
+            return this.count;
+        }
+
+        @Override
+        public long parent(long state) {
+            return this.parents[(int) state];
+        }
+
+        @Override
+        public int parentInput(long state) {
+            return this.parentInputs[(int) state];
+        }
+
+        @Override
+        public long addIfAbsent(int[] tuple, long parent, int input) {
+            int mask = this.slots.length - 1;
+            for (int slot = (int) hash(tuple) & mask;; slot = (slot + 1) & mask) {
+                int entry = this.slots[slot];
+                if (entry == 0) {
+                    break;
+                }
+                if (this.matches(entry - 1, tuple)) {
+                    return entry - 1;
+                }
+            }
+            this.add(tuple, parent, input);
+            return this.count - 1;
+        }
+
+        @Override
+        public void add(int[] tuple, long parent, int input) {
+            if (this.count == this.parents.length) {
+                int capacity = this.count * 2;
+                this.parents = Arrays.copyOf(this.parents, capacity);
+                this.parentInputs = Arrays.copyOf(this.parentInputs, capacity);
+                this.grow(capacity);
+                this.rehash(capacity * 2);
+            }
+            int state = this.count++;
+            this.store(state, tuple);
+            this.parents[state] = (int) parent;
+            this.parentInputs[state] = input;
+            this.insert(tuple, state);
+        }
+
+        private void insert(int[] tuple, int state) {
+            int mask = this.slots.length - 1;
+            int slot = (int) hash(tuple) & mask;
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = state + 1;
+        }
+
+        private void rehash(int capacity) {
+            this.slots = new int[capacity];
+            int[] tuple = new int[componentCount];
+            for (int state = 0; state < this.count; state++) {
+                this.tuple(state, tuple);
+                this.insert(tuple, state);
+            }
+        }
+
+        long indexBytes() {
+            return 4L * (this.parents.length + this.parentInputs.length + this.slots.length);
+        }
+    }
+
+    /** States packed into a long each */
+    private class PackedStore extends MemoryStore {
+        long[] keys = new long[64];
+
+        @Override
+        boolean matches(int state, int[] tuple) {
+            return this.keys[state] == pack(tuple);
+        }
+
+        @Override
+        void store(int state, int[] tuple) {
+            this.keys[state] = pack(tuple);
+        }
+
+        @Override
+        void grow(int capacity) {
+            this.keys = Arrays.copyOf(this.keys, capacity);
+        }
+
+        @Override
+        public void tuple(long state, int[] into) {
+            unpack(this.keys[(int) state], into);
+        }
+
+        @Override
+        public long bytesUsed() {
+            return this.indexBytes() + 8L * this.keys.length;
+        }
+    }
+
+    /** States stored as consecutive ints in a shared array */
+    private class TupleStore extends MemoryStore {
+        int[] tuples = new int[64 * componentCount];
+
+        @Override
+        boolean matches(int state, int[] tuple) {
+            return Arrays.equals(this.tuples, state * componentCount, (state + 1) * componentCount,
+                    tuple, 0, componentCount);
+        }
+
+        @Override
+        void store(int state, int[] tuple) {
+            System.arraycopy(tuple, 0, this.tuples, state * componentCount, componentCount);
+        }
+
+        @Override
+        void grow(int capacity) {
+            this.tuples = Arrays.copyOf(this.tuples, capacity * componentCount);
+        }
+
+        @Override
+        public void tuple(long state, int[] into) {
+            System.arraycopy(this.tuples, (int) state * componentCount, into, 0, componentCount);
+        }
+
+        @Override
+        public long bytesUsed() {
+            return this.indexBytes() + 4L * this.tuples.length;
+        }
+    }
+
+    /**
+     * States stored in fixed size records in a temporary file, with a bloom filter
+     * as the set of visited states. A record holds the parent, the input from the
+     * parent and the tuple, packed if possible.
+     */
+    private class SpilledStore implements StateStore {
+        private static final int BUFFER_RECORDS = 4096;
+        private static final int HASHES = 4;
+
+        private final Path file;
+        private final FileChannel channel;
+        private final int recordSize;
+        private final long[] filter;
+        private final long filterMask;
+        /** Records that have not been written yet, starting at record {@code written} */
+        private final ByteBuffer writeBuffer;
+        private long written = 0;
+        /** Records read from the file, starting at record {@code readStart} */
+        private final ByteBuffer readBuffer;
+        private long readStart = 0;
+        private long readCount = 0;
+        private long count = 0;
+
+        SpilledStore(MemoryStore memory) {
+            this.recordSize = 12 + (bitsPerComponent > 0 ? 8 : 4 * componentCount);
+            long filterWords = Long.highestOneBit(Math.max(1L << 14, Math.min(memoryBudget / 8, 1L << 30)));
+            this.filter = new long[(int) filterWords];
+            this.filterMask = filterWords * 64 - 1;
+            this.writeBuffer = ByteBuffer.allocate(BUFFER_RECORDS * this.recordSize);
+            this.readBuffer = ByteBuffer.allocate(BUFFER_RECORDS * this.recordSize);
+            try {
+                this.file = spillDirectory == null ? Files.createTempFile("product", ".states")
+                        : Files.createTempFile(spillDirectory, "product", ".states");
+                this.file.toFile().deleteOnExit();
+                this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not create a file for the states of the product", e);
+            }
+            int[] tuple = new int[componentCount];
+            for (int state = 0; state < memory.count; state++) {
+                memory.tuple(state, tuple);
+                this.add(tuple, memory.parents[state], memory.parentInputs[state]);
+            }
+        }
+
+        @Override
+        public long size() {
+            return this.count;
+        }
+
+        @Override
+        public long addIfAbsent(int[] tuple, long parent, int input) {
+            long h = hash(tuple);
+            long h2 = mix(h) | 1;
+            boolean present = true;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = (h + i * h2) & this.filterMask;
+                if ((this.filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    present = false;
+                    break;
+                }
+            }
+            if (present) {
+                return -1;
+            }
+            this.add(tuple, parent, input);
+            return this.count - 1;
+        }
+
+        @Override
+        public void add(int[] tuple, long parent, int input) {
+            long h = hash(tuple);
+            long h2 = mix(h) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = (h + i * h2) & this.filterMask;
+                this.filter[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            if (!this.writeBuffer.hasRemaining()) {
+                this.flush();
+            }
+            this.writeBuffer.putLong(parent);
+            this.writeBuffer.putInt(input);
+            if (bitsPerComponent > 0) {
+                this.writeBuffer.putLong(pack(tuple));
+            } else {
+                for (int value : tuple) {
+                    this.writeBuffer.putInt(value);
+                }
+            }
+            this.count++;
+        }
+
+        private void flush() {
+            this.writeBuffer.flip();
+            try {
+                long position = this.written * this.recordSize;
+                while (this.writeBuffer.hasRemaining()) {
+                    position += this.channel.write(this.writeBuffer, position);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the states of the product", e);
+            }
+            this.written = this.count;
+            this.writeBuffer.clear();
+        }
+
+        /**
+         * @return A buffer positioned at the record of the state
+         */
+        private ByteBuffer record(long state) {
+            if (state >= this.written) {
+                this.flush();
+            }
+            if (state < this.readStart || state >= this.readStart + this.readCount) {
+                this.readBuffer.clear();
+                try {
+                    long position = state * this.recordSize;
+                    long end = Math.min(this.written, state + BUFFER_RECORDS) * this.recordSize;
+                    this.readBuffer.limit((int) (end - position));
+                    while (this.readBuffer.hasRemaining()) {
+                        int read = this.channel.read(this.readBuffer, position + this.readBuffer.position());
+                        if (read < 0) {
+                            throw new IOException("Unexpected end of file");
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read the states of the product", e);
+                }
+                this.readStart = state;
+                this.readCount = (this.readBuffer.limit()) / this.recordSize;
+            }
+            this.readBuffer.position((int) (state - this.readStart) * this.recordSize);
+            return this.readBuffer;
+        }
+
+        @Override
+        public void tuple(long state, int[] into) {
+            ByteBuffer buffer = this.record(state);
+            buffer.position(buffer.position() + 12);
+            if (bitsPerComponent > 0) {
+                unpack(buffer.getLong(), into);
+            } else {
+                for (int c = 0; c < componentCount; c++) {
+                    into[c] = buffer.getInt();
+                }
+            }
+        }
+
+        @Override
+        public long parent(long state) {
+            return this.record(state).getLong();
+        }
+
+        @Override
+        public int parentInput(long state) {
+            ByteBuffer buffer = this.record(state);
+            return buffer.getInt(buffer.position() + 8);
+        }
+
+        @Override
+        public long bytesUsed() {
+            return 8L * this.filter.length + this.writeBuffer.capacity() + this.readBuffer.capacity();
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.channel.close();
+                Files.deleteIfExists(this.file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not delete the states of the product", e);
+            }
+        }
+    }
+}
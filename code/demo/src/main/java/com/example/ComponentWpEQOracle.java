@@ -0,0 +1,229 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import de.learnlib.oracle.EquivalenceOracle.MealyEquivalenceOracle;
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.DefaultQuery;
+import net.automatalib.automaton.transducer.MealyMachine;
+import net.automatalib.util.automaton.Automata;
+import net.automatalib.word.Word;
+import net.automatalib.word.WordBuilder;
+
+/**
+ * Randomized W-method equivalence oracle which builds its tests from the
+ * components of a {@link DecomposedLearner}, instead of from the hypothesis
+ * itself. A test is an access sequence of a component state, followed by a
+ * random middle part and a suffix distinguishing the states of that component.
+ * The components take turns, and a test word is asked at most once per
+ * equivalence query.
+ * <p>
+ * There are only finitely many such tests, and some states of the hypothesis
+ * may only be reached by longer words. When {@link #MAX_DUPLICATES} tests in a
+ * row were generated before, the access sequences are replaced by the state
+ * cover of the hypothesis itself. When that runs out as well, the tests become
+ * the random Wp-method words of the hypothesis, with its characterizing set as
+ * suffixes, and may repeat from then on. Without a bound, an equivalence query
+ * therefore only ends with a counterexample, as with
+ * {@link de.learnlib.oracle.equivalence.MealyRandomWpMethodEQOracle}.
+ * <p>
+ * The hypothesis can have as many states as the product of its components, so
+ * its state cover and characterizing set grow with that product. The ones of
+ * the components stay small, which keeps the tests short.
+ */
+public class ComponentWpEQOracle<I, O> implements MealyEquivalenceOracle<I, O> {
+
+    /** The number of tests in a row that were generated before, after which the tests count as exhausted */
+    public static final int MAX_DUPLICATES = 10_000;
+
+    private final MembershipOracle<I, Word<O>> sulOracle;
+    private final DecomposedLearner<I> learner;
+    private final int minimalSize;
+    private final int rndLength;
+    private final int bound;
+    private final Random random;
+    private final int batchSize;
+
+    /**
+     * @param sulOracle   The oracle asking the tests to the target
+     * @param learner     The learner whose hypotheses are tested
+     * @param minimalSize The minimal length of the random middle part
+     * @param rndLength   The maximal number of symbols added to the minimal length
+     */
+    public ComponentWpEQOracle(MembershipOracle<I, Word<O>> sulOracle, DecomposedLearner<I> learner,
+            int minimalSize, int rndLength) {
+        this(sulOracle, learner, minimalSize, rndLength, 0, new Random(), 1);
+    }
+
+    /**
+     * @param sulOracle   The oracle asking the tests to the target
+     * @param learner     The learner whose hypotheses are tested
+     * @param minimalSize The minimal length of the random middle part
+     * @param rndLength   The maximal number of symbols added to the minimal length
+     * @param bound       The maximal number of tests per equivalence query, or 0
+     *                    to test until a counterexample is found
+     * @param random      The source of randomness
+     * @param batchSize   The number of tests given to the oracle at once
+     */
+    public ComponentWpEQOracle(MembershipOracle<I, Word<O>> sulOracle, DecomposedLearner<I> learner,
+            int minimalSize, int rndLength, int bound, Random random, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size should be positive, but was " + batchSize);
+        }
+        this.sulOracle = sulOracle;
+        this.learner = learner;
+        this.minimalSize = minimalSize;
+        this.rndLength = rndLength;
+        this.bound = bound;
+        this.random = random;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public @Nullable DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis,
+            Collection<? extends I> inputs) {
+        Iterator<Word<I>> tests = this.generateTestWords(hypothesis, inputs);
+        List<DefaultQuery<I, Word<O>>> batch = new ArrayList<>(Math.min(this.batchSize, 1024));
+        while (tests.hasNext()) {
+            batch.add(new DefaultQuery<>(tests.next()));
+            if (batch.size() == this.batchSize || !tests.hasNext()) {
+                DefaultQuery<I, Word<O>> ce = this.testBatch(hypothesis, batch);
+                if (ce != null) {
+                    return ce;
+                }
+                batch.clear();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generates the tests for a hypothesis while they are iterated. A word that
+     * was generated before is skipped, but counts towards the bound, until the
+     * tests fall back to random Wp-method words, see {@link ComponentWpEQOracle}.
+     *
+     * @param hypothesis The hypothesis, of which the components are taken from
+     *                   the learner
+     * @param inputs     The input symbols of the tests
+     * @return The test words, which end only at the bound
+     */
+    public Iterator<Word<I>> generateTestWords(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs) {
+        List<I> symbols = new ArrayList<>(inputs);
+        List<List<Word<I>>> accessSequences = new ArrayList<>();
+        List<List<Word<I>>> suffixes = new ArrayList<>();
+        for (int c = 0; c < this.learner.getComponentCount(); c++) {
+            accessSequences.add(this.learner.getComponentAccessSequences(c));
+            List<Word<I>> componentSuffixes = this.learner.getComponentSuffixes(c);
+            suffixes.add(componentSuffixes.isEmpty() ? Collections.singletonList(Word.epsilon()) : componentSuffixes);
+        }
+        if (accessSequences.isEmpty()) {
+            // Without components, the hypothesis is tested with random words
+            accessSequences.add(Collections.singletonList(Word.epsilon()));
+            suffixes.add(Collections.singletonList(Word.epsilon()));
+        }
+        return new Iterator<>() {
+            private final Set<Word<I>> tested = new HashSet<>();
+            private List<List<Word<I>>> access = accessSequences;
+            private List<List<Word<I>>> distinguishing = suffixes;
+            /** Set when the tests fell back to random Wp-method words, which are not deduplicated */
+            private boolean exhausted = false;
+            private int duplicates = 0;
+            private long test = 0;
+            private int component = 0;
+            private Word<I> next;
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null && (bound == 0 || this.test < bound)) {
+                    if (this.duplicates == MAX_DUPLICATES) {
+                        this.useHypothesisStateCover();
+                        continue;
+                    }
+                    Word<I> word = generateTest(symbols, this.access.get(this.component),
+                            this.distinguishing.get(this.component));
+                    this.component = (this.component + 1) % this.access.size();
+                    this.test++;
+                    if (this.exhausted || this.tested.add(word)) {
+                        this.next = word;
+                        this.duplicates = 0;
+                    } else {
+                        this.duplicates++;
+                    }
+                }
+                return this.next != null;
+            }
+
+            /**
+             * Replaces the access sequences of the components by the state cover of
+             * the hypothesis, combined with the suffixes of all components. If that
+             * was done before, the suffixes are replaced by the characterizing set
+             * of the hypothesis, and the tests are no longer deduplicated.
+             */
+            private void useHypothesisStateCover() {
+                if (this.access != accessSequences) {
+                    List<Word<I>> characterizingSet = Automata.characterizingSet(hypothesis, symbols);
+                    this.distinguishing = Collections.singletonList(characterizingSet.isEmpty()
+                            ? Collections.singletonList(Word.epsilon())
+                            : characterizingSet);
+                    this.exhausted = true;
+                    this.tested.clear();
+                } else {
+                    Set<Word<I>> allSuffixes = new LinkedHashSet<>();
+                    suffixes.forEach(allSuffixes::addAll);
+                    this.access = Collections.singletonList(Automata.stateCover(hypothesis, symbols));
+                    this.distinguishing = Collections.singletonList(new ArrayList<>(allSuffixes));
+                }
+                this.component = 0;
+                this.duplicates = 0;
+            }
+
+            @Override
+            public Word<I> next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Word<I> word = this.next;
+                this.next = null;
+                return word;
+            }
+        };
+    }
+
+    private Word<I> generateTest(List<I> symbols, List<Word<I>> accessSequences, List<Word<I>> suffixes) {
+        WordBuilder<I> wb = new WordBuilder<>();
+        wb.append(accessSequences.get(this.random.nextInt(accessSequences.size())));
+        int length = this.minimalSize + (this.rndLength > 0 ? this.random.nextInt(this.rndLength + 1) : 0);
+        for (int i = 0; i < length && !symbols.isEmpty(); i++) {
+            wb.add(symbols.get(this.random.nextInt(symbols.size())));
+        }
+        wb.append(suffixes.get(this.random.nextInt(suffixes.size())));
+        return wb.toWord();
+    }
+
+    /**
+     * @return The first test in the batch on which the hypothesis is wrong, or
+     *         null if there is none
+     */
+    private DefaultQuery<I, Word<O>> testBatch(MealyMachine<?, I, ?, O> hypothesis,
+            List<DefaultQuery<I, Word<O>>> batch) {
+        this.sulOracle.processQueries(batch);
+        for (DefaultQuery<I, Word<O>> query : batch) {
+            Word<O> expected = hypothesis.computeSuffixOutput(query.getPrefix(), query.getSuffix());
+            if (!expected.equals(query.getOutput())) {
+                return query;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example;
+
+import java.util.List;
+
+import de.learnlib.algorithm.LearningAlgorithm.MealyLearner;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.util.automaton.Automata;
+import net.automatalib.word.Word;
+
+/**
+ * A learner whose hypothesis is the combination of one component for every
+ * output, where the component of an output tells when that output is given.
+ * The components are usually much smaller than the hypothesis itself, so
+ * {@link ComponentWpEQOracle} builds its tests from the components.
+ *
+ * @param <I> The input alphabet type
+ */
+public interface DecomposedLearner<I> {
+
+    /**
+     * @return The number of components of the current hypothesis, in the order
+     *         of the output alphabet
+     */
+    int getComponentCount();
+
+    /**
+     * @param component The index of the component
+     * @return A word reaching every state of the component
+     */
+    List<Word<I>> getComponentAccessSequences(int component);
+
+    /**
+     * @param component The index of the component
+     * @return Suffixes which together distinguish all states of the component
+     */
+    List<Word<I>> getComponentSuffixes(int component);
+
+    /**
+     * Views the hypothesis of a learner without components as a single component
+     *
+     * @param learner       The learner
+     * @param inputAlphabet The input alphabet of the learner
+     * @return The view, which takes the current hypothesis of the learner
+     */
+    static <I> DecomposedLearner<I> of(MealyLearner<I, ?> learner, Alphabet<I> inputAlphabet) {
+        return new DecomposedLearner<>() {
+            @Override
+            public int getComponentCount() {
+                return 1;
+            }
+
+            @Override
+            public List<Word<I>> getComponentAccessSequences(int component) {
+                return Automata.stateCover(learner.getHypothesisModel(), inputAlphabet);
+            }
+
+            @Override
+            public List<Word<I>> getComponentSuffixes(int component) {
+                return Automata.characterizingSet(learner.getHypothesisModel(), inputAlphabet);
+            }
+        };
+    }
+}
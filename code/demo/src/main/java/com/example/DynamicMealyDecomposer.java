@@ -1,15 +1,9 @@
 package com.example;
 
-import java.util.ArrayDeque;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import de.learnlib.acex.AcexAnalyzer;
 import de.learnlib.algorithm.ttt.mealy.TTTLearnerMealy;
-import de.learnlib.filter.cache.mealy.MealyCaches;
 import de.learnlib.oracle.MembershipOracle;
 import de.learnlib.query.DefaultQuery;
 import net.automatalib.alphabet.Alphabet;
@@ -19,7 +13,6 @@ import net.automatalib.word.Word;
 import net.automatalib.word.WordBuilder;
 
 public class DynamicMealyDecomposer<I, O> extends MealyDecomposer<I, O> {
-    private final MembershipOracle<I, Word<O>> mqOracle;
     private final AcexAnalyzer analyzer;
 
     public DynamicMealyDecomposer(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle, AcexAnalyzer analyzer) {
@@ -28,28 +21,57 @@ public class DynamicMealyDecomposer<I, O> extends MealyDecomposer<I, O> {
 
     public DynamicMealyDecomposer(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle,
             AcexAnalyzer analyzer, GrowingAlphabet<O> outputAlphabet) {
-        super(inputAlphabet, mqOracle, analyzer, outputAlphabet, false);
-        this.mqOracle = mqOracle;
+        this(inputAlphabet, mqOracle, analyzer, outputAlphabet, false);
+    }
+
+    /**
+     * @param useCache If true, all components share one cache in front of
+     *                 {@code mqOracle}, including components created for outputs
+     *                 that are found later
+     */
+    public DynamicMealyDecomposer(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle,
+            AcexAnalyzer analyzer, GrowingAlphabet<O> outputAlphabet, boolean useCache) {
+        this(inputAlphabet, mqOracle, analyzer, outputAlphabet, useCache, null);
+    }
+
+    /**
+     * @param executor If not null, the components are learned in parallel on this
+     *                 executor, see
+     *                 {@link MealyDecomposer#MealyDecomposer(Alphabet, MembershipOracle, AcexAnalyzer, Alphabet, boolean, ExecutorService)}
+     */
+    public DynamicMealyDecomposer(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle,
+            AcexAnalyzer analyzer, GrowingAlphabet<O> outputAlphabet, boolean useCache, ExecutorService executor) {
+        super(inputAlphabet, mqOracle, analyzer, outputAlphabet, useCache, executor);
         this.analyzer = analyzer;
     }
 
     public static <I, O> DynamicMealyDecomposer<I, O> createDynamicMealyDecomposerWithCache(Alphabet<I> inputAlphabet,
             MembershipOracle<I, Word<O>> mqOracle, AcexAnalyzer analyzer, GrowingAlphabet<O> outputAlphabet) {
-        MembershipOracle<I, Word<O>> cacheOracle = MealyCaches.createCache(inputAlphabet, mqOracle);
-        return new DynamicMealyDecomposer<>(inputAlphabet, cacheOracle, analyzer, outputAlphabet);
+        return new DynamicMealyDecomposer<>(inputAlphabet, mqOracle, analyzer, outputAlphabet, true);
     }
 
     public static <I, O> DynamicMealyDecomposer<I, O> createDynamicMealyDecomposerWithCache(Alphabet<I> inputAlphabet,
             MembershipOracle<I, Word<O>> mqOracle, AcexAnalyzer analyzer) {
-        MembershipOracle<I, Word<O>> cacheOracle = MealyCaches.createCache(inputAlphabet, mqOracle);
-        return new DynamicMealyDecomposer<>(inputAlphabet, cacheOracle, analyzer);
+        return new DynamicMealyDecomposer<>(inputAlphabet, mqOracle, analyzer, new GrowingMapAlphabet<>(), true);
+    }
+
+    /**
+     * Creates a decomposer which learns its components in parallel, using a
+     * thread-safe cache shared by all components
+     *
+     * @param mqOracle The membership oracle, which should be thread-safe
+     * @param executor The executor on which the components are learned
+     * @return The decomposer
+     */
+    public static <I, O> DynamicMealyDecomposer<I, O> createParallelDynamicMealyDecomposer(Alphabet<I> inputAlphabet,
+            MembershipOracle<I, Word<O>> mqOracle, AcexAnalyzer analyzer, ExecutorService executor) {
+        return new DynamicMealyDecomposer<>(inputAlphabet, mqOracle, analyzer, new GrowingMapAlphabet<>(), true,
+                executor);
     }
 
     @Override
     public void startLearning() {
-        for(MealyLearner<I, Boolean> learner : learners) {
-            learner.startLearning();
-        }
+        super.startLearning();
         this.fixReachableDefects();
     }
 
@@ -60,77 +82,49 @@ public class DynamicMealyDecomposer<I, O> extends MealyDecomposer<I, O> {
 
     public boolean refineHypothesis(DefaultQuery<I, Word<O>> ce, boolean fixDefects) {
         boolean refined = false;
+        int knownOutputs = this.learners.size();
         for(O o : ce.getOutput()) {
             if(!this.outputAlphabet.contains(o)) {
                 TTTLearnerMealy<I, Boolean> learner = new TTTLearnerMealy<>(this.getInputAlphabet(),
-                    new OutputOracle(this.mqOracle, o), this.analyzer);
-                learner.startLearning();
+                    this.createOutputOracle(o), this.analyzer);
                 this.learners.add(learner);
                 this.outputAlphabet.add(o);
                 refined = true;
             }
         }
-        for(int i = 0; i < this.learners.size(); i++) {
-            WordBuilder<Boolean> wb = new WordBuilder<>();
-            for(O o : ce.getOutput()) {
-                wb.add(this.outputAlphabet.getSymbol(i).equals(o));
-            }
-            DefaultQuery<I, Word<Boolean>> query = new DefaultQuery<I, Word<Boolean>>(
-                ce.getPrefix(),
-                ce.getSuffix(),
-                wb.toWord());
-            boolean r = this.learners.get(i).refineHypothesis(query);
-            refined |= r;
-        }
+        this.runComponents(knownOutputs, this.learners.size(), i -> {
+            this.learners.get(i).startLearning();
+            return false;
+        });
+        refined |= this.refineComponents(ce);
         if(fixDefects && refined) {
             fixReachableDefects();
         }
         return refined;
     }
 
-    @SuppressWarnings("unchecked")
     private DefaultQuery<I, Word<O>> findReachableDefect() {
         /*
          * We try to find a defect without doing equivalence queries by doing a reachability analysis.
          * For each transitions, there must be exactly one component machine that outputs true.
          * If there are 0 or >= 2, then there is at least one component for which we have found a counterexample.
+         * Only the components that were refined since the last search are encoded again.
          */
-        RecomposedMealyMachine<Object, Object> hypothesis = (RecomposedMealyMachine<Object, Object>) this.getHypothesisModel();
-
-        Set<List<Object>> reach = new HashSet<>();
-        Queue<List<Object>> bfsQueue = new ArrayDeque<>();
-        List<Object> init = hypothesis.getInitialState();
-        bfsQueue.add(init);
-        Queue<WordBuilder<I>> accessSequences = new ArrayDeque<>();
-        accessSequences.add(new WordBuilder<>());
-        List<Object> curr;
-        while ((curr = bfsQueue.poll()) != null) {
-            WordBuilder<I> wb = accessSequences.poll();
-            if(reach.contains(curr)) continue;
-
-            for (I in : this.getInputAlphabet()) {
-                WordBuilder<I> wbin = new WordBuilder<>(wb.toWord());
-                wbin.add(in);
-                List<Object> transition = hypothesis.getTransition(curr, in);
-                List<Boolean> outputs = hypothesis.getComponentOutputs(transition);
-                long trueCount = Collections.frequency(outputs, true);
-                if(trueCount != 1) {// We have found a defect
-                    Word<I> w = wbin.toWord();
-                    DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(w);
-                    ce.answer(this.mqOracle.answerQuery(w));
-                    return ce;
-                }
-                List<Object> succ = hypothesis.getSuccessor(transition);
-                if (succ == null) continue;
-
-                if (!reach.contains(succ)) {
-                    bfsQueue.add(succ);
-                    accessSequences.add(wbin);
-                }
-            }
-            reach.add(curr);
+        int[] path;
+        try (ComponentProduct product = this.buildComponentProduct()) {
+            path = product.findTransition(active -> active != 1);
+        }
+        if(path == null) {
+            return null;
+        }
+        WordBuilder<I> wb = new WordBuilder<>(path.length);
+        for(int input : path) {
+            wb.add(this.getInputAlphabet().getSymbol(input));
         }
-        return null;
+        Word<I> w = wb.toWord();
+        DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(w);
+        ce.answer(this.componentOracle.answerQuery(w));
+        return ce;
     }
 
     private <S, T> void fixReachableDefects() {
@@ -0,0 +1,114 @@
+package com.example;
+
+import net.automatalib.word.Word;
+
+/**
+ * Receives what happens while {@link OutputLstar} learns, for example to
+ * collect {@link LearningMetrics} or to log progress. All methods do nothing by
+ * default. Without a listener, OL* uses {@link #NONE}, and then does not read
+ * the clock or build any event.
+ */
+public interface LearningListener {
+
+    /** The listener which ignores everything */
+    LearningListener NONE = new LearningListener() {
+    };
+
+    /**
+     * The timed phases of OL*. Phases can be nested: membership queries are asked
+     * during the other phases, and closing is part of handling a counterexample.
+     * The ordinals are written to query traces, so new phases go at the end.
+     */
+    enum Phase {
+        CLOSING, CONSISTENCY, DEFECT_SEARCH, COUNTEREXAMPLE, MEMBERSHIP_QUERIES,
+        /** Filling the first observation table */
+        INITIALIZE,
+        /** Making a long prefix row short, which adds its successor rows */
+        MAKE_SHORT,
+        /** Adding suffixes to the table */
+        ADD_SUFFIXES,
+        /** Testing a hypothesis, which is not done by OL* but by the equivalence oracle */
+        EQUIVALENCE
+    }
+
+    /** The things OL* finds while learning */
+    enum Event {
+        /** The table is closed without looking at the outputs separately */
+        REGULAR_CLOSED,
+        /** An inconsistency is fixed by adding the word as a suffix */
+        INCONSISTENCY,
+        /** No component outputs true after the word */
+        ZERO_OUTPUTS,
+        /** Several components output true after the word */
+        MULTIPLE_OUTPUTS,
+        /** A defect still occurs after the table was refined with the word */
+        SAME_DEFECT,
+        /**
+         * A search for defects ran out of its memory budget and may have skipped
+         * states, so defects may remain even though none were found
+         */
+        INCOMPLETE_SEARCH
+    }
+
+    /**
+     * Called when a phase starts, except for {@link Phase#MEMBERSHIP_QUERIES},
+     * of which only the end is reported
+     *
+     * @param phase The phase
+     */
+    default void phaseStarted(Phase phase) {
+    }
+
+    /**
+     * @param phase The phase
+     * @param nanos The time the phase took, in nanoseconds
+     */
+    default void phaseFinished(Phase phase, long nanos) {
+    }
+
+    /**
+     * @param event     The event
+     * @param word      The word of the event, or null if it has none
+     * @param shortRows The number of short prefix rows at the time of the event
+     */
+    default void eventOccurred(Event event, Word<?> word, int shortRows) {
+    }
+
+    /**
+     * @param size The number of membership queries asked at once
+     */
+    default void queriesAsked(int size) {
+    }
+
+    /**
+     * @return A listener which tells both listeners about everything, first the
+     *         first one
+     */
+    static LearningListener both(LearningListener first, LearningListener second) {
+        return new LearningListener() {
+            @Override
+            public void phaseStarted(Phase phase) {
+                first.phaseStarted(phase);
+                second.phaseStarted(phase);
+            }
+
+            @Override
+            public void phaseFinished(Phase phase, long nanos) {
+                first.phaseFinished(phase, nanos);
+                second.phaseFinished(phase, nanos);
+            }
+
+            @Override
+            public void eventOccurred(Event event, Word<?> word, int shortRows) {
+                first.eventOccurred(event, word, shortRows);
+                second.eventOccurred(event, word, shortRows);
+            }
+
+            @Override
+            public void queriesAsked(int size) {
+                first.queriesAsked(size);
+                second.queriesAsked(size);
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.example;
+
+import net.automatalib.word.Word;
+
+/**
+ * Listener which counts the events of OL*, adds up the time of every phase,
+ * and keeps a histogram of the sizes of the batches of membership queries. The
+ * histogram has a bucket for every power of two, where bucket {@code b} counts
+ * the batches of at least {@code 2^b} and less than {@code 2^(b + 1)} queries.
+ * <p>
+ * The metrics are updated by the thread that learns, and are not meant to be
+ * read while learning.
+ */
+public class LearningMetrics implements LearningListener {
+
+    private final long[] eventCounts = new long[Event.values().length];
+    private final long[] phaseCounts = new long[Phase.values().length];
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] batchSizes = new long[Integer.SIZE];
+    private long queryCount = 0;
+
+    @Override
+    public void phaseFinished(Phase phase, long nanos) {
+        this.phaseCounts[phase.ordinal()]++;
+        this.phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    @Override
+    public void eventOccurred(Event event, Word<?> word, int shortRows) {
+        this.eventCounts[event.ordinal()]++;
+    }
+
+    @Override
+    public void queriesAsked(int size) {
+        if (size > 0) {
+            this.batchSizes[31 - Integer.numberOfLeadingZeros(size)]++;
+            this.queryCount += size;
+        }
+    }
+
+    public long getCount(Event event) {
+        return this.eventCounts[event.ordinal()];
+    }
+
+    /**
+     * @return The number of times the phase finished
+     */
+    public long getCount(Phase phase) {
+        return this.phaseCounts[phase.ordinal()];
+    }
+
+    /**
+     * @return The total time spent in the phase, in nanoseconds
+     */
+    public long getNanos(Phase phase) {
+        return this.phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return The number of membership queries asked by OL*, including the ones
+     *         answered by a cache
+     */
+    public long getQueryCount() {
+        return this.queryCount;
+    }
+
+    /**
+     * @param bucket The bucket, see {@link LearningMetrics}
+     * @return The number of batches of membership queries in the bucket
+     */
+    public long getBatchCount(int bucket) {
+        return this.batchSizes[bucket];
+    }
+
+    /**
+     * @return One line per event and phase that occurred, and the histogram of
+     *         the batch sizes
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Event event : Event.values()) {
+            if (this.getCount(event) > 0) {
+                sb.append(event).append(": ").append(this.getCount(event)).append('\n');
+            }
+        }
+        for (Phase phase : Phase.values()) {
+            if (this.getCount(phase) > 0) {
+                sb.append(phase).append(": ").append(this.getCount(phase)).append(" times, ")
+                        .append(String.format("%.1f", this.getNanos(phase) / 1e6)).append(" ms\n");
+            }
+        }
+        sb.append("Batch sizes:");
+        for (int b = 0; b < this.batchSizes.length; b++) {
+            if (this.batchSizes[b] > 0) {
+                sb.append(' ').append(1L << b).append('+').append('=').append(this.batchSizes[b]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -6,7 +6,6 @@ import net.automatalib.util.automaton.Automata;
 import net.automatalib.util.automaton.builder.AutomatonBuilders;
 import net.automatalib.automaton.transducer.CompactMealy;
 import net.automatalib.automaton.transducer.MealyMachine;
-import net.automatalib.serialization.dot.DOTParsers;
 import net.automatalib.visualization.Visualization;
 import net.automatalib.word.Word;
 
@@ -18,17 +17,28 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Stream;
 
 import de.learnlib.acex.AcexAnalyzers;
 import de.learnlib.algorithm.LearningAlgorithm.MealyLearner;
 import de.learnlib.algorithm.ttt.mealy.TTTLearnerMealy;
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.oracle.MembershipOracle.MealyMembershipOracle;
 import de.learnlib.oracle.membership.MealySimulatorOracle;
 import de.learnlib.query.DefaultQuery;
 import de.learnlib.oracle.EquivalenceOracle.MealyEquivalenceOracle;
 import de.learnlib.oracle.equivalence.MealyRandomWpMethodEQOracle;
 import de.learnlib.filter.cache.mealy.MealyCacheOracle;
 import de.learnlib.filter.cache.mealy.MealyCaches;
+import de.learnlib.filter.cache.mealy.ThreadSafeMealyCaches;
 import de.learnlib.filter.statistic.oracle.MealyCounterOracle;
 import de.learnlib.algorithm.lstar.ce.ObservationTableCEXHandlers;
 import de.learnlib.algorithm.lstar.closing.ClosingStrategies;
@@ -37,6 +47,60 @@ import de.learnlib.util.mealy.MealyUtil;
 
 public class Main {
 
+    /** The number of queries kept in a query trace, the oldest are dropped */
+    private static final int TRACE_CAPACITY = 1 << 20;
+
+    /**
+     * Changes to the setup with which the results in {@code results/} were
+     * obtained. They are off unless their argument is given, for example
+     * {@code --compile-hypothesis}.
+     */
+    public enum Option {
+        /** OL* compiles its hypotheses, see {@link OutputLstar#setCompileHypothesis} */
+        COMPILE_HYPOTHESIS,
+        /** OL* analyzes counterexamples by binary search, see {@link OutputLstar#setCounterexampleAnalyzer} */
+        BINARY_SEARCH,
+        /** The hypotheses of OL* and the decomposer are tested per component, see {@link ComponentWpEQOracle} */
+        COMPONENT_TESTS;
+
+        /**
+         * @return The argument which turns the option on
+         */
+        public String getArgument() {
+            return "--" + this.name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+
+        /**
+         * Takes the options out of a list of arguments
+         *
+         * @param args The arguments, from which the options are removed
+         * @return The options that were given
+         * @throws IllegalArgumentException If an argument starting with {@code --}
+         *                                  is not an option
+         */
+        public static Set<Option> parse(List<String> args) {
+            Set<Option> options = EnumSet.noneOf(Option.class);
+            for (Iterator<String> it = args.iterator(); it.hasNext();) {
+                String arg = it.next();
+                if (!arg.startsWith("--")) {
+                    continue;
+                }
+                Option option = null;
+                for (Option candidate : values()) {
+                    if (candidate.getArgument().equals(arg)) {
+                        option = candidate;
+                    }
+                }
+                if (option == null) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+                options.add(option);
+                it.remove();
+            }
+            return options;
+        }
+    }
+
     /**
      * Create the toy example.
      *
@@ -157,28 +221,280 @@ public class Main {
      */
     public static <I, O> void learn(CompactMealy<I, O> target, String algorithm, boolean visualize, File file,
             String name) throws IOException {
-        Alphabet<I> inputAlphabet = target.getInputAlphabet();
-        MealySimulatorOracle<I, O> mOracle = new MealySimulatorOracle<>(target);
-        MealyCounterOracle<I, O> mOracleForLearning = new MealyCounterOracle<>(mOracle);
-        MealyCacheOracle<I, O> mCacheOracle = MealyCaches.createTreeCache(inputAlphabet, mOracleForLearning);
-        MealyCounterOracle<I, O> mOracleForTesting = new MealyCounterOracle<>(mOracle);
-        MealyCacheOracle<I, O> testingCacheOracle = MealyCaches.createTreeCache(inputAlphabet, mOracleForTesting);
-        MealyRandomWpMethodEQOracle<I, O> eqOracle = new MealyRandomWpMethodEQOracle<>(testingCacheOracle, 2, 10);
+        learn(target, algorithm, visualize, file, name, 1);
+    }
+
+    /**
+     * Learns the target using the specified algorithm, answering membership
+     * queries with several simulators of the target at the same time
+     *
+     * @param <I>       The input alphabet type of the target
+     * @param <O>       The output alphabet type of the target
+     * @param target    The target to be learned
+     * @param algorithm The name of the algorithm to be used
+     * @param visualize Set to true to visualize the results
+     * @param file      The file to store the results in, set to null if results
+     *                  should not be stored
+     * @param name      The name of the file to store the results in
+     * @param workers   The number of simulators answering membership queries,
+     *                  which is also the number of components the decomposer
+     *                  learns at the same time
+     * @throws IOException
+     */
+    public static <I, O> void learn(CompactMealy<I, O> target, String algorithm, boolean visualize, File file,
+            String name, int workers) throws IOException {
+        learn(target, algorithm, visualize, file, name, workers, EnumSet.noneOf(Option.class));
+    }
+
+    /**
+     * Learns the target using the specified algorithm, with changes to the setup
+     * of the results in {@code results/}
+     *
+     * @param <I>       The input alphabet type of the target
+     * @param <O>       The output alphabet type of the target
+     * @param target    The target to be learned
+     * @param algorithm The name of the algorithm to be used
+     * @param visualize Set to true to visualize the results
+     * @param file      The file to store the results in, set to null if results
+     *                  should not be stored
+     * @param name      The name of the file to store the results in
+     * @param workers   The number of simulators answering membership queries
+     * @param options   The changes to the setup
+     * @throws IOException
+     */
+    public static <I, O> void learn(CompactMealy<I, O> target, String algorithm, boolean visualize, File file,
+            String name, int workers, Set<Option> options) throws IOException {
+        learn(target, algorithm, visualize, file, name, workers, options, null, null, null);
+    }
+
+    /**
+     * Learns the target using the specified algorithm, answering membership
+     * queries from a cache in a file before asking the target. Queries asked in
+     * earlier runs on the same target, with any algorithm, are not asked again.
+     *
+     * @param <I>         The input alphabet type of the target
+     * @param <O>         The output alphabet type of the target
+     * @param target      The target to be learned
+     * @param algorithm   The name of the algorithm to be used
+     * @param visualize   Set to true to visualize the results
+     * @param file        The file to store the results in, set to null if
+     *                    results should not be stored
+     * @param name        The name of the file to store the results in
+     * @param workers     The number of simulators answering membership queries
+     * @param options     The changes to the setup
+     * @param queryCache  The file of the query cache, or null to not keep the
+     *                    queries after learning
+     * @param inputCodec  The codec for the input symbols in the query cache
+     * @param outputCodec The codec for the output symbols in the query cache
+     * @throws IOException
+     */
+    public static <I, O> void learn(CompactMealy<I, O> target, String algorithm, boolean visualize, File file,
+            String name, int workers, Set<Option> options, Path queryCache, SymbolCodec<I> inputCodec,
+            SymbolCodec<O> outputCodec) throws IOException {
+        learn(target, algorithm, visualize, file, name, workers, options, queryCache, inputCodec, outputCodec, null);
+    }
+
+    /**
+     * Learns the target using the specified algorithm, and writes a trace of the
+     * membership queries that get past the caches of this run to a file, see
+     * {@link QueryTraceBuffer}. The queries of OL* are traced per phase.
+     *
+     * @param <I>         The input alphabet type of the target
+     * @param <O>         The output alphabet type of the target
+     * @param target      The target to be learned
+     * @param algorithm   The name of the algorithm to be used
+     * @param visualize   Set to true to visualize the results
+     * @param file        The file to store the results in, set to null if
+     *                    results should not be stored
+     * @param name        The name of the file to store the results in
+     * @param workers     The number of simulators answering membership queries
+     * @param options     The changes to the setup
+     * @param queryCache  The file of the query cache, or null to not keep the
+     *                    queries after learning
+     * @param inputCodec  The codec for the input symbols in the query cache
+     * @param outputCodec The codec for the output symbols in the query cache
+     * @param queryTrace  The file of the query trace, or null to not trace the
+     *                    queries
+     * @throws IOException
+     */
+    public static <I, O> void learn(CompactMealy<I, O> target, String algorithm, boolean visualize, File file,
+            String name, int workers, Set<Option> options, Path queryCache, SymbolCodec<I> inputCodec,
+            SymbolCodec<O> outputCodec, Path queryTrace) throws IOException {
+        QueryTraceBuffer trace = queryTrace == null ? null : new QueryTraceBuffer(TRACE_CAPACITY);
+        MealyMembershipOracle<I, O> sul;
+        ParallelMembershipOracle<I, O> pool = null;
+        ExecutorService componentExecutor = null;
+        if (workers > 1) {
+            List<MealySimulatorOracle<I, O>> simulators = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                simulators.add(new MealySimulatorOracle<>(target));
+            }
+            componentExecutor = ParallelMembershipOracle.platformThreads(workers);
+            pool = new ParallelMembershipOracle<>(simulators);
+            sul = pool;
+        } else {
+            sul = new MealySimulatorOracle<>(target);
+        }
+        try {
+            if (queryCache != null) {
+                try (PersistentQueryCache<I, O> cache = new PersistentQueryCache<>(queryCache,
+                        target.getInputAlphabet(), sul, inputCodec, outputCodec)) {
+                    learn(target, cache, workers, componentExecutor, algorithm, visualize, file, name, trace, options);
+                    System.out.println("Queries asked to the target: " + cache.getMissCount());
+                }
+            } else {
+                learn(target, sul, workers, componentExecutor, algorithm, visualize, file, name, trace, options);
+            }
+            if (trace != null) {
+                trace.dump(queryTrace);
+            }
+        } finally {
+            if (pool != null) {
+                pool.close();
+                componentExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Creates the learner for an algorithm
+     *
+     * @param <I>               The input alphabet type of the target
+     * @param <O>               The output alphabet type of the target
+     * @param algorithm         The name of the algorithm to be used
+     * @param inputAlphabet     The input alphabet of the target
+     * @param mOracle           The membership oracle, used by the decomposer,
+     *                          which caches the queries of every component
+     * @param cacheOracle       The membership oracle with a cache, used by the
+     *                          other algorithms
+     * @param componentExecutor The executor on which the decomposer learns its
+     *                          components, or null to learn them one at a time
+     * @param options           The changes to the setup, of which OL* uses
+     *                          {@link Option#COMPILE_HYPOTHESIS} and
+     *                          {@link Option#BINARY_SEARCH}
+     * @return The learner
+     */
+    public static <I, O> MealyLearner<I, O> createLearner(String algorithm, Alphabet<I> inputAlphabet,
+            MealyMembershipOracle<I, O> mOracle, MealyCacheOracle<I, O> cacheOracle,
+            ExecutorService componentExecutor, Set<Option> options) {
         MealyLearner<I, O> learner;
-        if (algorithm.equals("Decompose")) {
-            learner = DynamicMealyDecomposer.createDynamicMealyDecomposerWithCache(inputAlphabet, mOracleForLearning,
+        if (algorithm.equals("Decompose") && componentExecutor != null) {
+            learner = DynamicMealyDecomposer.createParallelDynamicMealyDecomposer(inputAlphabet, mOracle,
+                    AcexAnalyzers.LINEAR_FWD, componentExecutor);
+        } else if (algorithm.equals("Decompose")) {
+            learner = DynamicMealyDecomposer.createDynamicMealyDecomposerWithCache(inputAlphabet, mOracle,
                     AcexAnalyzers.LINEAR_FWD);
         } else if (algorithm.equals("TTT")) {
-            learner = new TTTLearnerMealy<>(inputAlphabet, mCacheOracle, AcexAnalyzers.LINEAR_FWD);
+            learner = new TTTLearnerMealy<>(inputAlphabet, cacheOracle, AcexAnalyzers.LINEAR_FWD);
         } else if (algorithm.equals("OLstar") || algorithm.equals("OL*")) {
-            learner = new OutputLstar<I, O>(inputAlphabet, mCacheOracle, true, false);
+            OutputLstar<I, O> outputLearner = new OutputLstar<I, O>(inputAlphabet, cacheOracle, true, false);
+            outputLearner.setCompileHypothesis(options.contains(Option.COMPILE_HYPOTHESIS));
+            if (options.contains(Option.BINARY_SEARCH)) {
+                outputLearner.setCounterexampleAnalyzer(AcexAnalyzers.BINARY_SEARCH_FWD);
+            }
+            learner = outputLearner;
         } else if (algorithm.equals("Lstar") || algorithm.equals("L*")) {
             learner = MealyUtil.wrapSymbolLearner(
-                    new ClassicLStarMealy<I, O>(inputAlphabet, MealyUtil.wrapWordOracle(mCacheOracle),
+                    new ClassicLStarMealy<I, O>(inputAlphabet, MealyUtil.wrapWordOracle(cacheOracle),
                             ObservationTableCEXHandlers.SUFFIX1BY1, ClosingStrategies.CLOSE_FIRST));
         } else {
             throw new UnsupportedOperationException("Valid algorithms: Decompose / TTT / OLstar / Lstar");
         }
+        return learner;
+    }
+
+    /**
+     * Creates the random Wp-method equivalence oracle for a learner. With
+     * {@link Option#COMPONENT_TESTS}, the tests for a learner whose hypotheses
+     * consist of components are built from the components, see
+     * {@link ComponentWpEQOracle}.
+     *
+     * @param <I>           The input alphabet type of the target
+     * @param <O>           The output alphabet type of the target
+     * @param learner       The learner whose hypotheses are tested
+     * @param testingOracle The membership oracle asking the tests
+     * @param random        The source of randomness of the tests
+     * @param batchSize     The number of tests given to the oracle at once
+     * @param options       The changes to the setup
+     * @return The equivalence oracle
+     */
+    public static <I, O> MealyEquivalenceOracle<I, O> createEquivalenceOracle(MealyLearner<I, O> learner,
+            MealyMembershipOracle<I, O> testingOracle, Random random, int batchSize, Set<Option> options) {
+        if (options.contains(Option.COMPONENT_TESTS) && learner instanceof DecomposedLearner) {
+            @SuppressWarnings("unchecked")
+            DecomposedLearner<I> decomposed = (DecomposedLearner<I>) learner;
+            return new ComponentWpEQOracle<>(testingOracle, decomposed, 2, 10, 0, random, batchSize);
+        }
+        return new MealyRandomWpMethodEQOracle<>(testingOracle, 2, 10, 0, random, batchSize);
+    }
+
+    /**
+     * Creates an equivalence oracle which asks its tests with several workers at
+     * the same time, see {@link ParallelEQOracle}. The tests are the same as those
+     * of {@link #createEquivalenceOracle}, except that a hypothesis that is not
+     * tested per component is tested as a single component.
+     *
+     * @param <I>           The input alphabet type of the target
+     * @param <O>           The output alphabet type of the target
+     * @param learner       The learner whose hypotheses are tested
+     * @param inputAlphabet The input alphabet of the target
+     * @param workers       The oracles asking the tests, each of which is used by
+     *                      one thread at a time
+     * @param executor      The executor running the workers
+     * @param random        The source of randomness of the tests
+     * @param batchSize     The number of tests given to a worker at once
+     * @param options       The changes to the setup
+     * @return The equivalence oracle
+     */
+    public static <I, O> ParallelEQOracle<I, O> createParallelEquivalenceOracle(MealyLearner<I, O> learner,
+            Alphabet<I> inputAlphabet, List<? extends MembershipOracle<I, Word<O>>> workers,
+            ExecutorService executor, Random random, int batchSize, Set<Option> options) {
+        DecomposedLearner<I> decomposed;
+        if (options.contains(Option.COMPONENT_TESTS) && learner instanceof DecomposedLearner) {
+            @SuppressWarnings("unchecked")
+            DecomposedLearner<I> components = (DecomposedLearner<I>) learner;
+            decomposed = components;
+        } else {
+            decomposed = DecomposedLearner.of(learner, inputAlphabet);
+        }
+        ComponentWpEQOracle<I, O> tests = new ComponentWpEQOracle<>(workers.get(0), decomposed, 2, 10, 0, random, 1);
+        return new ParallelEQOracle<I, O>(workers, executor, tests::generateTestWords, batchSize);
+    }
+
+    private static <I, O> void learn(CompactMealy<I, O> target, MealyMembershipOracle<I, O> mOracle, int workers,
+            ExecutorService componentExecutor, String algorithm, boolean visualize, File file, String name,
+            QueryTraceBuffer trace, Set<Option> options) throws IOException {
+        Alphabet<I> inputAlphabet = target.getInputAlphabet();
+        MealyMembershipOracle<I, O> learningSul = mOracle;
+        MealyMembershipOracle<I, O> testingSul = mOracle;
+        TracingMembershipOracle<I, O> learningTracer = null;
+        if (trace != null) {
+            learningTracer = new TracingMembershipOracle<>(mOracle, trace, null);
+            learningSul = learningTracer;
+            testingSul = new TracingMembershipOracle<>(mOracle, trace, LearningListener.Phase.EQUIVALENCE);
+        }
+        MealyCounterOracle<I, O> mOracleForLearning = new MealyCounterOracle<>(learningSul);
+        MealyCacheOracle<I, O> mCacheOracle = MealyCaches.createTreeCache(inputAlphabet, mOracleForLearning);
+        MealyCounterOracle<I, O> mOracleForTesting = new MealyCounterOracle<>(testingSul);
+        MealyCacheOracle<I, O> testingCacheOracle = MealyCaches.createTreeCache(inputAlphabet, mOracleForTesting);
+        MealyLearner<I, O> learner = createLearner(algorithm, inputAlphabet, mOracleForLearning, mCacheOracle,
+                componentExecutor, options);
+        LearningMetrics metrics = new LearningMetrics();
+        if (learner instanceof OutputLstar) {
+            ((OutputLstar<I, O>) learner)
+                    .setListener(learningTracer == null ? metrics : LearningListener.both(metrics, learningTracer));
+        }
+        MealyEquivalenceOracle<I, O> eqOracle;
+        if (componentExecutor != null) {
+            // The workers share a thread-safe cache, so a test word is asked to the target only once
+            MembershipOracle<I, Word<O>> sharedTestingCache = ThreadSafeMealyCaches
+                    .<I, O>createTreeCache(inputAlphabet, () -> mOracleForTesting).get();
+            eqOracle = createParallelEquivalenceOracle(learner, inputAlphabet,
+                    Collections.nCopies(workers, sharedTestingCache), componentExecutor, new Random(),
+                    ParallelEQOracle.DEFAULT_BATCH_SIZE, options);
+        } else {
+            eqOracle = createEquivalenceOracle(learner, testingCacheOracle, new Random(), 1, options);
+        }
 
         int stage = learnLoop(learner, inputAlphabet, eqOracle, target);
         System.out.println("Done!");
@@ -186,10 +502,13 @@ public class Main {
         System.out.println("Testing: " + mOracleForTesting.getStatisticalData().getSummary());
         System.out.println("Rounds: " + stage);
         if (learner instanceof OutputLstar) {
-            OutputLstar<I, O> outputLearner = (OutputLstar<I, O>) learner;
-            System.out.println("Inconsistent count: " + String.valueOf(outputLearner.inconsistentCount));
-            System.out.println("Zero outputs count: " + String.valueOf(outputLearner.zeroOutputsCount));
-            System.out.println("Two outputs count: " + String.valueOf(outputLearner.twoOutputsCount));
+            System.out.println(metrics.getSummary());
+        }
+        if (learner instanceof MealyDecomposer) {
+            for (MealyDecomposer<I, O>.OutputOracle component : ((MealyDecomposer<I, O>) learner).getOutputOracles()) {
+                System.out.println("Component " + component.getOutput() + ": " + component.getQueryCount()
+                        + " queries, " + String.format("%.1f", 100 * component.getHitRate()) + "% cache hits");
+            }
         }
 
         if (visualize) {
@@ -215,9 +534,12 @@ public class Main {
                 OutputLstar<I, O> outputLearner = (OutputLstar<I, O>) learner;
                 writer.append("\nNumber of short rows: "
                         + String.valueOf(outputLearner.getObservationTable().getShortPrefixRows().size()));
-                writer.append("\nInconsistent count: " + String.valueOf(outputLearner.inconsistentCount));
-                writer.append("\nZero outputs count: " + String.valueOf(outputLearner.zeroOutputsCount));
-                writer.append("\nTwo outputs count: " + String.valueOf(outputLearner.twoOutputsCount));
+                writer.append("\nInconsistent count: "
+                        + String.valueOf(metrics.getCount(LearningListener.Event.INCONSISTENCY)));
+                writer.append("\nZero outputs count: "
+                        + String.valueOf(metrics.getCount(LearningListener.Event.ZERO_OUTPUTS)));
+                writer.append("\nTwo outputs count: "
+                        + String.valueOf(metrics.getCount(LearningListener.Event.MULTIPLE_OUTPUTS)));
             }
             writer.append("\nLearning: ");
             writer.append(mOracleForLearning.getStatisticalData().getSummary());
@@ -229,34 +551,41 @@ public class Main {
     }
 
     public static void main(String[] args) throws IOException {
+        // The options may be given anywhere, the other arguments are in a fixed order
+        List<String> arguments = new ArrayList<>(List.of(args));
+        Set<Option> options = Option.parse(arguments);
+        args = arguments.toArray(new String[0]);
         if (args.length < 2) {
             /*
-             * System.err.println("Usage: ./Main toy <algorithm> OR ./Main _ <algorithm>" OR ./Main all <algorithm>);
+             * System.err.println("Usage: ./Main toy <algorithm> OR ./Main _ <algorithm>" OR ./Main all <algorithm>
+             *         [workers] OR ./Main <model> <algorithm> [workers] [query cache or _] [query trace],
+             *         each followed by any of --compile-hypothesis --binary-search --component-tests);
              * System.exit(1);
              */
             args = new String[] { "_", "OL*" };
         }
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : 1;
         if (args[0].equals("toy")) {
             CompactMealy<Character, Object> target = constructSUL(3);
-            learn(target, args[1], false, null, null);
+            learn(target, args[1], false, null, null, workers, options);
         } else if (args[0].equals("all")) {
-            File file = new File("results\\rerun.txt");
+            // Here the third argument is the number of models learned at the same time
+            int parallelModels = args.length > 2 ? workers : Runtime.getRuntime().availableProcessors();
+            List<Path> models;
             try (Stream<Path> paths = Files.walk(Paths.get("models"))) {
-                for (Path path : paths.filter(Files::isRegularFile).toList()) {
-                    CompactMealy<String, String> target = DOTParsers
-                            .mealy()
-                            .readModel(path.toFile()).model;
-                    learn(target, args[1], false, file, path.toString());
-                }
+                models = paths.filter(Files::isRegularFile).sorted().toList();
             }
+            new BatchRunner(args[1], options, parallelModels).run(models, Paths.get("results", "rerun.csv"));
         } else {
             if (args[0].equals("_")) {
                 args[0] = "models\\random-2-5-1.dot";
             }
-            CompactMealy<String, String> target = DOTParsers
-                    .mealy()
-                    .readModel(new File(args[0])).model;
-            learn(target, args[1], false, null, null);
+            CompactMealy<String, String> target = CircuitParser.readMealy(Paths.get(args[0]));
+            // The optional fourth argument is the file of the query cache, and the fifth the file of the query trace
+            Path queryCache = args.length > 3 && !args[3].equals("_") ? Paths.get(args[3]) : null;
+            Path queryTrace = args.length > 4 ? Paths.get(args[4]) : null;
+            learn(target, args[1], false, null, null, workers, options, queryCache, SymbolCodec.STRING,
+                    SymbolCodec.STRING, queryTrace);
         }
     }
 }
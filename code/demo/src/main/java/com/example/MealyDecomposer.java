@@ -1,12 +1,13 @@
 package com.example;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntPredicate;
 
 import com.google.common.collect.Lists;
 
@@ -14,32 +15,71 @@ import de.learnlib.acex.AcexAnalyzer;
 import de.learnlib.algorithm.LearningAlgorithm;
 import de.learnlib.algorithm.ttt.mealy.TTTLearnerMealy;
 import de.learnlib.filter.cache.mealy.MealyCaches;
+import de.learnlib.filter.cache.mealy.ThreadSafeMealyCaches;
 import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.DefaultQuery;
 import de.learnlib.query.Query;
 import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.concept.StateIDs;
 import net.automatalib.automaton.transducer.MealyMachine;
+import net.automatalib.util.automaton.Automata;
 import net.automatalib.word.Word;
-import net.automatalib.word.WordBuilder;
 
-public abstract class MealyDecomposer<I, O> implements LearningAlgorithm.MealyLearner<I, O> {
+public abstract class MealyDecomposer<I, O> implements LearningAlgorithm.MealyLearner<I, O>, DecomposedLearner<I> {
     final private Alphabet<I> inputAlphabet;
 
     final Alphabet<O> outputAlphabet;
     final ArrayList<MealyLearner<I, Boolean>> learners;
+    final ArrayList<OutputOracle> outputOracles;
+    /**
+     * The oracle shared by all components. If a cache is used, this is a prefix
+     * tree cache, so a component never asks the SUL for a word that any component
+     * has asked before (or an extension of).
+     */
+    final MembershipOracle<I, Word<O>> componentOracle;
+    /**
+     * Sits between the cache and the SUL, so that words which are being asked by
+     * one component are not asked again by another. Null if there is no cache.
+     */
+    final private PendingQueryOracle<I, O> pendingOracle;
+    /** Runs the component learners in parallel, or null to run them one after another */
+    final private ExecutorService executor;
+    /**
+     * The hypothesis of every component encoded as tables, or null if the
+     * component changed since it was encoded
+     */
+    final private List<EncodedComponent> encodedComponents = new ArrayList<>();
+    /** The hypothesis of the decomposer, or null if a component changed since it was built */
+    private volatile RecomposedMealyMachine hypothesis;
 
     public MealyDecomposer(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle, AcexAnalyzer analyzer, Alphabet<O> outputAlphabet, boolean useCache) {
+        this(inputAlphabet, mqOracle, analyzer, outputAlphabet, useCache, null);
+    }
+
+    /**
+     * @param executor If not null, the component learners are started and refined
+     *                 in parallel on this executor. The membership oracle should
+     *                 then be thread-safe, and the shared cache is made thread-safe.
+     */
+    public MealyDecomposer(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle, AcexAnalyzer analyzer, Alphabet<O> outputAlphabet, boolean useCache, ExecutorService executor) {
         this.inputAlphabet = inputAlphabet;
         this.outputAlphabet = outputAlphabet;
         this.learners = Lists.newArrayListWithCapacity(outputAlphabet.size());
+        this.outputOracles = Lists.newArrayListWithCapacity(outputAlphabet.size());
+        this.executor = executor;
         if(useCache) {
-            MembershipOracle<I, Word<O>> cacheOracle = MealyCaches.createCache(inputAlphabet, mqOracle);
-            for(O o : outputAlphabet) {
-                this.learners.add(new TTTLearnerMealy<I, Boolean>(inputAlphabet, new OutputOracle(cacheOracle, o), analyzer));
+            this.pendingOracle = new PendingQueryOracle<>(mqOracle);
+            if(executor == null) {
+                this.componentOracle = MealyCaches.createTreeCache(inputAlphabet, this.pendingOracle);
+            } else {
+                this.componentOracle = ThreadSafeMealyCaches.<I, O>createTreeCache(inputAlphabet, () -> this.pendingOracle).get();
             }
         } else {
-            for(O o : outputAlphabet) {
-                this.learners.add(new TTTLearnerMealy<I, Boolean>(inputAlphabet, new OutputOracle(mqOracle, o), analyzer));
-            }
+            this.pendingOracle = null;
+            this.componentOracle = mqOracle;
+        }
+        for(O o : outputAlphabet) {
+            this.learners.add(new TTTLearnerMealy<I, Boolean>(inputAlphabet, this.createOutputOracle(o), analyzer));
         }
     }
 
@@ -51,26 +91,213 @@ public abstract class MealyDecomposer<I, O> implements LearningAlgorithm.MealyLe
         return this.inputAlphabet;
     }
 
+    /**
+     * Creates the oracle for the component of an output, which uses the oracle
+     * shared by all components
+     *
+     * @param output The output of the component
+     * @return The oracle
+     */
+    OutputOracle createOutputOracle(O output) {
+        OutputOracle oracle = new OutputOracle(this.componentOracle, output);
+        this.outputOracles.add(oracle);
+        this.encodedComponents.add(null);
+        this.hypothesis = null;
+        return oracle;
+    }
+
+    /**
+     * @return The oracles of the components, in the order of the output alphabet
+     */
+    public List<OutputOracle> getOutputOracles() {
+        return Collections.unmodifiableList(this.outputOracles);
+    }
+
     @Override
-    @SuppressWarnings("unchecked")
     public MealyMachine<?, I, ?, O> getHypothesisModel() {
-        List<MealyMachine<Object, I, Object, Boolean>> components = Lists.newArrayListWithCapacity(this.learners.size());
-        for(MealyLearner<I, Boolean> l : this.learners) {
-            components.add((MealyMachine<Object, I, Object, Boolean>) l.getHypothesisModel()); // This cast is fine
+        if(this.hypothesis == null) {
+            List<MealyMachine<?, I, ?, Boolean>> components = Lists.newArrayListWithCapacity(this.learners.size());
+            for(MealyLearner<I, Boolean> l : this.learners) {
+                components.add(l.getHypothesisModel());
+            }
+            this.hypothesis = new RecomposedMealyMachine(components, this.buildComponentProduct());
         }
-        return new RecomposedMealyMachine<>(components, this.inputAlphabet, this.outputAlphabet);
+        return this.hypothesis;
+    }
+
+    @Override
+    public int getComponentCount() {
+        return this.learners.size();
+    }
+
+    @Override
+    public List<Word<I>> getComponentAccessSequences(int component) {
+        return Automata.stateCover(this.learners.get(component).getHypothesisModel(), this.inputAlphabet);
+    }
+
+    @Override
+    public List<Word<I>> getComponentSuffixes(int component) {
+        return Automata.characterizingSet(this.learners.get(component).getHypothesisModel(), this.inputAlphabet);
+    }
+
+    /**
+     * Encodes the hypotheses of the components for a {@link ComponentProduct}.
+     * Only the components that changed since they were last encoded are encoded
+     * again.
+     *
+     * @return The product of the hypotheses of the components, in the order of
+     *         the output alphabet
+     */
+    ComponentProduct buildComponentProduct() {
+        int componentCount = this.learners.size();
+        int[] initialStates = new int[componentCount];
+        int[][] successors = new int[componentCount][];
+        boolean[][] outputs = new boolean[componentCount][];
+        for(int i = 0; i < componentCount; i++) {
+            EncodedComponent encoded = this.encodedComponents.get(i);
+            if(encoded == null) {
+                encoded = this.encode(this.learners.get(i).getHypothesisModel());
+                this.encodedComponents.set(i, encoded);
+            }
+            initialStates[i] = encoded.initialState;
+            successors[i] = encoded.successors;
+            outputs[i] = encoded.outputs;
+        }
+        return new ComponentProduct(this.inputAlphabet.size(), initialStates, successors, outputs);
+    }
+
+    private <S, T> EncodedComponent encode(MealyMachine<S, I, T, Boolean> component) {
+        int inputCount = this.inputAlphabet.size();
+        StateIDs<S> ids = component.stateIDs();
+        Collection<S> states = component.getStates();
+        int[] successors = new int[states.size() * inputCount];
+        boolean[] outputs = new boolean[states.size() * inputCount];
+        for(S state : states) {
+            int offset = ids.getStateId(state) * inputCount;
+            for(int a = 0; a < inputCount; a++) {
+                T transition = component.getTransition(state, this.inputAlphabet.getSymbol(a));
+                successors[offset + a] = ids.getStateId(component.getSuccessor(transition));
+                outputs[offset + a] = component.getTransitionOutput(transition);
+            }
+        }
+        return new EncodedComponent(ids.getStateId(component.getInitialState()), successors, outputs);
+    }
+
+    /**
+     * Marks a component as changed, so that it is encoded again for the next
+     * hypothesis
+     *
+     * @param index The index of the component
+     */
+    void componentChanged(int index) {
+        this.encodedComponents.set(index, null);
+        this.hypothesis = null;
     }
 
     @Override
     public void startLearning() {
-        for(MealyLearner<I, Boolean> learner : learners) {
-            learner.startLearning();
+        this.runComponents(0, this.learners.size(), i -> {
+            this.learners.get(i).startLearning();
+            this.componentChanged(i);
+            return false;
+        });
+    }
+
+    /**
+     * Refines every component with the counterexample projected on its output
+     *
+     * @param ce The counterexample
+     * @return True if any component was refined
+     */
+    boolean refineComponents(DefaultQuery<I, Word<O>> ce) {
+        return this.runComponents(0, this.learners.size(), i -> {
+            DefaultQuery<I, Word<Boolean>> query = new DefaultQuery<I, Word<Boolean>>(
+                ce.getPrefix(),
+                ce.getSuffix(),
+                new ProjectedWord<>(ce.getOutput(), this.outputAlphabet.getSymbol(i)));
+            boolean refined = this.learners.get(i).refineHypothesis(query);
+            if(refined) {
+                this.componentChanged(i);
+            }
+            return refined;
+        });
+    }
+
+    /**
+     * Runs an action for the components with index {@code from} up to
+     * {@code to}, in parallel if there is an executor
+     *
+     * @param from   The index of the first component
+     * @param to     The index after the last component
+     * @param action The action, which gets the index of a component
+     * @return True if the action returned true for any component
+     */
+    boolean runComponents(int from, int to, IntPredicate action) {
+        boolean result = false;
+        if(this.executor == null || to - from <= 1) {
+            for(int i = from; i < to; i++) {
+                result |= action.test(i);
+            }
+            return result;
         }
+        List<Future<Boolean>> futures = Lists.newArrayListWithCapacity(to - from);
+        for(int i = from; i < to; i++) {
+            int index = i;
+            futures.add(this.executor.submit(() -> action.test(index)));
+        }
+        RuntimeException failure = null;
+        for(Future<Boolean> future : futures) {
+            try {
+                result |= future.get();
+            } catch(ExecutionException e) {
+                if(failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new IllegalStateException("A component learner failed", e.getCause());
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted while waiting for the component learners", e);
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+        return result;
     }
 
+    /**
+     * A component hypothesis as the tables of a {@link ComponentProduct}
+     */
+    private static final class EncodedComponent {
+        final int initialState;
+        final int[] successors;
+        final boolean[] outputs;
+
+        EncodedComponent(int initialState, int[] successors, boolean[] outputs) {
+            this.initialState = initialState;
+            this.successors = successors;
+            this.outputs = outputs;
+        }
+    }
+
+    /**
+     * Oracle for a single component, which projects the answers of the delegate
+     * on the output of the component. The answers are {@link ProjectedWord}s, so
+     * an answer is only projected when the learner reads it, and no boolean word
+     * is built for it.
+     * <p>
+     * Keeps track of how many of its queries were answered by the shared cache
+     * instead of the SUL. Identical queries in the same batch, or that another
+     * component is asking at the same time, are only asked once, so they count
+     * as hits as well.
+     */
     public class OutputOracle implements MembershipOracle<I, Word<Boolean>> {
         final private MembershipOracle<I, Word<O>> delegate;
         final private O output;
+        private long queryCount = 0;
+        private long sulQueryCount = 0;
 
         public OutputOracle(MembershipOracle<I, Word<O>> delegate, O output) {
             this.delegate = delegate;
@@ -83,7 +310,43 @@ public abstract class MealyDecomposer<I, O> implements LearningAlgorithm.MealyLe
             for(Query<I, Word<Boolean>> q : queries) {
                 wrappedQueries.add(new WrappedQuery(q, this.output));
             }
+            long sulQueriesBefore = sulQueries();
             delegate.processQueries(wrappedQueries);
+            this.queryCount += queries.size();
+            this.sulQueryCount += sulQueries() - sulQueriesBefore;
+        }
+
+        /**
+         * @return The number of queries that reached the SUL so far, which is every
+         *         query if there is no shared cache
+         */
+        private long sulQueries() {
+            // The cache asks the SUL on the thread of the component
+            return pendingOracle == null ? this.queryCount : pendingOracle.getForwardedByCurrentThread();
+        }
+
+        public O getOutput() {
+            return this.output;
+        }
+
+        public long getQueryCount() {
+            return this.queryCount;
+        }
+
+        /**
+         * @return The number of queries of this component that had to be asked to
+         *         the SUL
+         */
+        public long getSulQueryCount() {
+            return this.sulQueryCount;
+        }
+
+        /**
+         * @return The fraction of queries of this component answered without
+         *         asking the SUL
+         */
+        public double getHitRate() {
+            return this.queryCount == 0 ? 0 : 1 - (double) this.sulQueryCount / this.queryCount;
         }
 
         class WrappedQuery extends Query<I, Word<O>> {
@@ -97,11 +360,7 @@ public abstract class MealyDecomposer<I, O> implements LearningAlgorithm.MealyLe
 
             @Override
             public void answer(Word<O> output) {
-                WordBuilder<Boolean> wb = new WordBuilder<>();
-                for(O o : output) {
-                    wb.add(this.wrappedOutput.equals(o));
-                }
-                this.original.answer(wb.toWord());
+                this.original.answer(new ProjectedWord<>(output, this.wrappedOutput));
             }
 
             @Override
@@ -118,96 +377,71 @@ public abstract class MealyDecomposer<I, O> implements LearningAlgorithm.MealyLe
 
     }
 
-    public class RecomposedMealyMachine<S, T> implements MealyMachine<List<S>, I, List<T>, O> {
-
-        final List<MealyMachine<S, I, T, Boolean>> components;
-        final Alphabet<I> inputAlphabet;
-        final Alphabet<O> outputAlphabet;
-        private Collection<List<S>> cachedStates;
-
-        public RecomposedMealyMachine(List<MealyMachine<S, I, T, Boolean>> components, Alphabet<I> inputAlphabet, Alphabet<O> outputAlphabet) {
+    /**
+     * The hypothesis of the decomposer: the product of the hypotheses of the
+     * components, in which a transition outputs the output of the first
+     * component that outputs true, or null if no component does.
+     * <p>
+     * The product is explored on demand by a {@link ComponentProduct}, which
+     * stores a state as a packed tuple of component states and numbers the
+     * states in the order in which they are reached, with the initial state as
+     * state 0. A transition is the number of its source state times the size of
+     * the input alphabet, plus the index of its input.
+     */
+    public class RecomposedMealyMachine implements MealyMachine<Integer, I, Integer, O> {
+
+        final List<MealyMachine<?, I, ?, Boolean>> components;
+        final ComponentProduct product;
+        private final int inputCount;
+        private List<Integer> cachedStates;
+
+        public RecomposedMealyMachine(List<MealyMachine<?, I, ?, Boolean>> components, ComponentProduct product) {
             this.components = components;
-            this.inputAlphabet = inputAlphabet;
-            this.outputAlphabet = outputAlphabet;
+            this.product = product;
+            this.inputCount = inputAlphabet.size();
         }
 
-        public List<MealyMachine<S, I, T, Boolean>> getComponents() {
+        public List<MealyMachine<?, I, ?, Boolean>> getComponents() {
             return this.components;
         }
 
         @Override
-        public List<S> getSuccessor(List<T> transitions) {
-            List<S> result = Lists.newArrayListWithCapacity(transitions.size());
-            for(int i = 0; i < transitions.size(); i++) {
-                result.add(components.get(i).getSuccessor(transitions.get(i)));
-            }
-            return result;
+        public Integer getSuccessor(Integer transition) {
+            return this.product.getSuccessor(transition / this.inputCount, transition % this.inputCount);
         }
 
         @Override
-        public Collection<List<S>> getStates() {
+        public Collection<Integer> getStates() {
             if(cachedStates != null) {
                 return cachedStates;
             }
-            Set<List<S>> reach = new HashSet<>();
-            Queue<List<S>> bfsQueue = new ArrayDeque<>();
-
-            List<S> init = getInitialState();
-
-            bfsQueue.add(init);
-
-            List<S> curr;
-            while ((curr = bfsQueue.poll()) != null) {
-                if(reach.contains(curr)) continue;
-
-                for (I in : this.inputAlphabet) {
-                    List<S> succ = getSuccessor(curr, in);
-                    if (succ == null) continue;
-
-                    if (!reach.contains(succ)) {
-                        bfsQueue.add(succ);
-                    }
+            for(int state = 0; state < this.product.getExploredCount(); state++) {
+                for(int a = 0; a < this.inputCount; a++) {
+                    this.product.getSuccessor(state, a);
                 }
-                reach.add(curr);
             }
-            cachedStates = reach;
+            List<Integer> states = Lists.newArrayListWithCapacity(this.product.getExploredCount());
+            for(int state = 0; state < this.product.getExploredCount(); state++) {
+                states.add(state);
+            }
+            cachedStates = Collections.unmodifiableList(states);
             return cachedStates;
         }
 
         @Override
-        public List<S> getInitialState() {
-            ArrayList<S> result = Lists.newArrayListWithCapacity(components.size());
-            for(MealyMachine<S, I, T, Boolean> component : this.components) {
-                result.add(component.getInitialState());
-            }
-            return result;
+        public Integer getInitialState() {
+            return 0;
         }
 
         @Override
-        public List<T> getTransition(List<S> states, I input) {
-            ArrayList<T> result = Lists.newArrayListWithCapacity(states.size());
-            for(int i = 0; i < states.size(); i++) {
-                result.add(components.get(i).getTransition(states.get(i), input));
-            }
-            return result;
+        public Integer getTransition(Integer state, I input) {
+            return state * this.inputCount + inputAlphabet.getSymbolIndex(input);
         }
 
         @Override
-        public O getTransitionOutput(List<T> transitions) {
-            for(int i = 0; i < transitions.size(); i++) {
-                if(components.get(i).getTransitionOutput(transitions.get(i))) {
-                    return outputAlphabet.getSymbol(i);
-                }
-            }
-            return null;
-        }
-
-        public List<Boolean> getComponentOutputs(List<T> transitions) {
-            ArrayList<Boolean> outputs = Lists.newArrayListWithCapacity(transitions.size());
-            for(int i = 0; i < transitions.size(); i++) {
-                outputs.add(components.get(i).getTransitionOutput(transitions.get(i)));
-            }
-            return outputs;
+        public O getTransitionOutput(Integer transition) {
+            int active = this.product.getFirstActive(transition / this.inputCount, transition % this.inputCount);
+            return active < 0 ? null : outputAlphabet.getSymbol(active);
         }
 
     }
@@ -0,0 +1,249 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Implementations of {@link OutputClosingStrategy}.
+ */
+public final class OutputClosingStrategies {
+
+    /**
+     * Makes a single row short: the row which is in the most classes, or the
+     * first of those rows. This is what OL* has always done, and it computes the
+     * unclosed rows again after every row.
+     */
+    public static final OutputClosingStrategy MOST_CLASSES = new OutputClosingStrategy() {
+        @Override
+        public <I, O> List<OutputRow<I, O>> selectClosingRows(List<List<OutputRow<I, O>>> unclosed) {
+            HittingSet<I, O> problem = new HittingSet<>(unclosed);
+            int best = 0;
+            int bestCount = 0;
+            int[] counts = new int[problem.rows.size()];
+            // The first row to reach the highest count wins, as in the order of
+            // the classes
+            for (int[] rows : problem.classRows) {
+                for (int row : rows) {
+                    if (++counts[row] > bestCount) {
+                        best = row;
+                        bestCount = counts[row];
+                    }
+                }
+            }
+            return Collections.singletonList(problem.rows.get(best));
+        }
+    };
+
+    /**
+     * Chooses rows until every class is closed, every time the row which is in
+     * the most classes that are not closed yet. The rows are kept in a priority
+     * queue by their number of classes, which is updated when a row is chosen.
+     * The result is at most a logarithmic factor larger than the smallest set of
+     * rows.
+     */
+    public static final OutputClosingStrategy GREEDY = new OutputClosingStrategy() {
+        @Override
+        public <I, O> List<OutputRow<I, O>> selectClosingRows(List<List<OutputRow<I, O>>> unclosed) {
+            HittingSet<I, O> problem = new HittingSet<>(unclosed);
+            return problem.toRows(problem.greedy());
+        }
+    };
+
+    /**
+     * Chooses a smallest set of rows that closes every class, by a branch and
+     * bound search which starts from the set of {@link #GREEDY}. The search
+     * stops after {@link #SEARCH_LIMIT} steps, and then returns the smallest set
+     * found so far, so tables with many unclosed classes cost at most a little
+     * more than the greedy strategy.
+     */
+    public static final OutputClosingStrategy MINIMAL = new OutputClosingStrategy() {
+        @Override
+        public <I, O> List<OutputRow<I, O>> selectClosingRows(List<List<OutputRow<I, O>>> unclosed) {
+            HittingSet<I, O> problem = new HittingSet<>(unclosed);
+            return problem.toRows(problem.minimal());
+        }
+    };
+
+    /** The maximum number of partial solutions that {@link #MINIMAL} visits */
+    public static final int SEARCH_LIMIT = 100_000;
+
+    private OutputClosingStrategies() {
+    }
+
+    /**
+     * The classes of unclosed rows, with the rows numbered in the order in which
+     * they first appear
+     */
+    private static final class HittingSet<I, O> {
+
+        private final List<OutputRow<I, O>> rows = new ArrayList<>();
+        /** For every class, the numbers of its rows */
+        private final int[][] classRows;
+        /** For every row, the numbers of the classes it is in */
+        private final int[][] rowClasses;
+
+        // State of the branch and bound search
+        private int[] coveredBy;
+        private List<Integer> chosen;
+        private List<Integer> best;
+        private int steps;
+
+        HittingSet(List<List<OutputRow<I, O>>> unclosed) {
+            Map<OutputRow<I, O>, Integer> numbers = new HashMap<>();
+            this.classRows = new int[unclosed.size()][];
+            int[] classCounts = new int[16];
+            for (int c = 0; c < unclosed.size(); c++) {
+                List<OutputRow<I, O>> unclosedClass = unclosed.get(c);
+                this.classRows[c] = new int[unclosedClass.size()];
+                for (int i = 0; i < unclosedClass.size(); i++) {
+                    Integer number = numbers.get(unclosedClass.get(i));
+                    if (number == null) {
+                        number = this.rows.size();
+                        numbers.put(unclosedClass.get(i), number);
+                        this.rows.add(unclosedClass.get(i));
+                        if (number == classCounts.length) {
+                            classCounts = Arrays.copyOf(classCounts, number * 2);
+                        }
+                    }
+                    this.classRows[c][i] = number;
+                    classCounts[number]++;
+                }
+            }
+            this.rowClasses = new int[this.rows.size()][];
+            for (int r = 0; r < this.rows.size(); r++) {
+                this.rowClasses[r] = new int[classCounts[r]];
+                classCounts[r] = 0;
+            }
+            for (int c = 0; c < this.classRows.length; c++) {
+                for (int r : this.classRows[c]) {
+                    this.rowClasses[r][classCounts[r]++] = c;
+                }
+            }
+        }
+
+        List<OutputRow<I, O>> toRows(List<Integer> numbers) {
+            List<OutputRow<I, O>> result = new ArrayList<>(numbers.size());
+            for (int number : numbers) {
+                result.add(this.rows.get(number));
+            }
+            return result;
+        }
+
+        /**
+         * @return The numbers of the rows chosen by the greedy strategy
+         */
+        List<Integer> greedy() {
+            int[] counts = new int[this.rows.size()];
+            // Highest count first, and for equal counts the lowest row number
+            PriorityQueue<Long> queue = new PriorityQueue<>(Collections.reverseOrder());
+            for (int r = 0; r < this.rows.size(); r++) {
+                counts[r] = this.rowClasses[r].length;
+                queue.add(key(counts[r], r));
+            }
+            boolean[] closed = new boolean[this.classRows.length];
+            int open = this.classRows.length;
+            List<Integer> result = new ArrayList<>();
+            while (open > 0) {
+                long key = queue.remove();
+                int row = Integer.MAX_VALUE - (int) key;
+                if ((int) (key >>> 32) != counts[row]) {
+                    continue; // The count of the row has dropped since it was queued
+                }
+                result.add(row);
+                for (int c : this.rowClasses[row]) {
+                    if (closed[c]) {
+                        continue;
+                    }
+                    closed[c] = true;
+                    open--;
+                    for (int other : this.classRows[c]) {
+                        counts[other]--;
+                        if (counts[other] > 0 && other != row) {
+                            queue.add(key(counts[other], other));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static long key(int count, int row) {
+            return ((long) count << 32) | (Integer.MAX_VALUE - row);
+        }
+
+        /**
+         * @return The numbers of the rows of a smallest hitting set, or of the
+         *         smallest one found within the search limit
+         */
+        List<Integer> minimal() {
+            this.best = this.greedy();
+            this.coveredBy = new int[this.classRows.length];
+            this.chosen = new ArrayList<>();
+            this.steps = 0;
+            this.search(this.classRows.length);
+            return this.best;
+        }
+
+        /**
+         * Extends the chosen rows with a row of the open class with the fewest
+         * rows, for every row of that class.
+         *
+         * @param open The number of classes that are not closed by the chosen rows
+         */
+        private void search(int open) {
+            if (open == 0) {
+                if (this.chosen.size() < this.best.size()) {
+                    this.best = new ArrayList<>(this.chosen);
+                }
+                return;
+            }
+            if (++this.steps > SEARCH_LIMIT || this.chosen.size() + this.lowerBound(open) >= this.best.size()) {
+                return;
+            }
+            int branch = -1;
+            for (int c = 0; c < this.classRows.length; c++) {
+                if (this.coveredBy[c] == 0 && (branch < 0 || this.classRows[c].length < this.classRows[branch].length)) {
+                    branch = c;
+                }
+            }
+            for (int row : this.classRows[branch]) {
+                int closed = 0;
+                for (int c : this.rowClasses[row]) {
+                    if (this.coveredBy[c]++ == 0) {
+                        closed++;
+                    }
+                }
+                this.chosen.add(row);
+                this.search(open - closed);
+                this.chosen.remove(this.chosen.size() - 1);
+                for (int c : this.rowClasses[row]) {
+                    this.coveredBy[c]--;
+                }
+            }
+        }
+
+        /**
+         * @return A lower bound on the number of rows needed to close the open
+         *         classes: their number divided by the most open classes a single
+         *         row is in
+         */
+        private int lowerBound(int open) {
+            int most = 1;
+            for (int[] classes : this.rowClasses) {
+                int count = 0;
+                for (int c : classes) {
+                    if (this.coveredBy[c] == 0) {
+                        count++;
+                    }
+                }
+                most = Math.max(most, count);
+            }
+            return (open + most - 1) / most;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example;
+
+import java.util.List;
+
+/**
+ * Chooses the long prefix rows which OL* makes short to close its observation
+ * table. Every class of unclosed rows is closed by making any one of its rows
+ * short, and a row may be in several classes, so this is a hitting set problem.
+ * Some implementations are in {@link OutputClosingStrategies}.
+ */
+public interface OutputClosingStrategy {
+
+    /**
+     * @param <I>      The input alphabet type
+     * @param <O>      The output alphabet type
+     * @param unclosed The classes of unclosed rows, as returned by
+     *                 {@link OutputObservationTable#findUnclosedRows()}, which is
+     *                 not empty
+     * @return The distinct rows to be made short, at least one. They do not have
+     *         to close every class, since the unclosed rows are computed again
+     *         after they are made short.
+     */
+    <I, O> List<OutputRow<I, O>> selectClosingRows(List<List<OutputRow<I, O>>> unclosed);
+}
@@ -2,36 +2,47 @@ package com.example;
 
 import de.learnlib.oracle.MembershipOracle;
 
-import java.util.ArrayDeque;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import com.google.common.collect.Multiset;
+
+import de.learnlib.acex.AbstractBaseCounterexample;
+import de.learnlib.acex.AcexAnalyzer;
 import de.learnlib.algorithm.LearningAlgorithm.MealyLearner;
 import de.learnlib.query.DefaultQuery;
+import de.learnlib.query.Query;
 import net.automatalib.alphabet.Alphabet;
+import net.automatalib.alphabet.GrowingAlphabet;
+import net.automatalib.automaton.transducer.CompactMealy;
 import net.automatalib.automaton.transducer.MealyMachine;
 import net.automatalib.common.util.Pair;
 import net.automatalib.word.Word;
 import net.automatalib.word.WordBuilder;
 
-public class OutputLstar<I, O> implements MealyLearner<I, O> {
+public class OutputLstar<I, O> implements MealyLearner<I, O>, DecomposedLearner<I> {
 
     private OutputObservationTable<I, O> table;
     private final MembershipOracle<I, Word<O>> mqOracle;
     private final Alphabet<I> inputAlphabet;
     private final boolean checkConsistency;
     private final boolean useFirstInconsistency;
-    public int inconsistentCount = 0;
-    public int zeroOutputsCount = 0;
-    public int twoOutputsCount = 0;
+    private LearningListener listener = LearningListener.NONE;
+    private long productMemoryBudget = ComponentProduct.UNLIMITED;
+    private AcexAnalyzer counterexampleAnalyzer;
+    private OutputClosingStrategy closingStrategy = OutputClosingStrategies.MOST_CLASSES;
+    private boolean compileHypothesis = false;
+    private CompactMealy<I, O> compiledHypothesis;
+    private int compiledModCount;
 
     /**
      * Constructor for OL*
@@ -48,21 +59,191 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
      */
     public OutputLstar(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> membershipOracle,
             boolean checkConsistency, boolean useFirstInconsistency) {
+        this(inputAlphabet, membershipOracle, checkConsistency, useFirstInconsistency,
+                OutputObservationTable.DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor for OL* which limits the size of the batches of membership
+     * queries
+     *
+     * @param inputAlphabet         The input alphabet of the target
+     * @param membershipOracle      The oracle to be used for membership queries
+     * @param checkConsistency      True if OL* should check for output-consistency
+     * @param useFirstInconsistency True if OL* should fix the first inconsistency
+     *                              found
+     * @param maxBatchSize          The maximum number of queries sent to the
+     *                              membership oracle at once
+     */
+    public OutputLstar(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> membershipOracle,
+            boolean checkConsistency, boolean useFirstInconsistency, int maxBatchSize) {
         this.inputAlphabet = inputAlphabet;
-        this.mqOracle = membershipOracle;
+        this.mqOracle = new ListenedOracle(membershipOracle);
         this.checkConsistency = checkConsistency;
         this.useFirstInconsistency = useFirstInconsistency;
-        this.table = new OutputObservationTable<>(inputAlphabet, membershipOracle);
+        this.table = new OutputObservationTable<>(inputAlphabet, this.mqOracle, maxBatchSize);
+    }
+
+    /**
+     * Sets the listener which is told about the phases and events of learning,
+     * for example {@link LearningMetrics}.
+     *
+     * @param listener The listener, or {@link LearningListener#NONE}
+     */
+    public void setListener(LearningListener listener) {
+        this.listener = listener;
+    }
+
+    public LearningListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * @return The current time in nanoseconds, or 0 if there is no listener to
+     *         tell how long a phase took
+     */
+    private long startPhase(LearningListener.Phase phase) {
+        if (this.listener == LearningListener.NONE) {
+            return 0;
+        }
+        this.listener.phaseStarted(phase);
+        return System.nanoTime();
+    }
+
+    private void endPhase(LearningListener.Phase phase, long start) {
+        if (this.listener != LearningListener.NONE) {
+            this.listener.phaseFinished(phase, System.nanoTime() - start);
+        }
+    }
+
+    private boolean addSuffix(Word<I> suffix) {
+        long start = this.startPhase(LearningListener.Phase.ADD_SUFFIXES);
+        boolean added = this.table.addSuffix(suffix);
+        this.endPhase(LearningListener.Phase.ADD_SUFFIXES, start);
+        return added;
+    }
+
+    private void makeShort(OutputRow<I, O> row) {
+        long start = this.startPhase(LearningListener.Phase.MAKE_SHORT);
+        this.table.makeShort(row);
+        this.endPhase(LearningListener.Phase.MAKE_SHORT, start);
+    }
+
+    private void event(LearningListener.Event event, Word<I> word) {
+        if (this.listener != LearningListener.NONE) {
+            this.listener.eventOccurred(event, word, this.table.getShortPrefixRows().size());
+        }
+    }
+
+    /**
+     * Limits the memory used to store the reachable states of the hypothesis when
+     * searching for defects. Above the limit, the states are moved to disk and the
+     * search may skip states, see {@link ComponentProduct}.
+     *
+     * @param bytes The memory budget in bytes, or {@link ComponentProduct#UNLIMITED}
+     */
+    public void setProductMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("The memory budget should be positive, but was " + bytes);
+        }
+        this.productMemoryBudget = bytes;
+    }
+
+    /**
+     * Sets the strategy which chooses the rows that are made short when the table
+     * is not closed.
+     *
+     * @param closingStrategy The strategy, {@link OutputClosingStrategies#MOST_CLASSES}
+     *                        by default
+     */
+    public void setClosingStrategy(OutputClosingStrategy closingStrategy) {
+        this.closingStrategy = closingStrategy;
+    }
+
+    /**
+     * Lets counterexamples be analyzed in the way of Rivest and Schapire, so that
+     * a single suffix is added for each counterexample. With a binary search
+     * analyzer this takes a logarithmic number of membership queries in the
+     * length of the counterexample. Without an analyzer, the suffixes of the
+     * counterexample are tried from short to long, and the first suffix which is
+     * not in the table yet is added.
+     *
+     * @param analyzer The analyzer, for example
+     *                 {@link de.learnlib.acex.AcexAnalyzers#BINARY_SEARCH_FWD}, or
+     *                 null to try the suffixes in order
+     */
+    public void setCounterexampleAnalyzer(AcexAnalyzer analyzer) {
+        this.counterexampleAnalyzer = analyzer;
+    }
+
+    /**
+     * Lets {@link #getHypothesisModel()} return a {@link CompactMealy} containing
+     * the reachable states of the hypothesis, instead of an
+     * {@link OutputMealyMachine} which computes every transition when it is taken.
+     * The compact machine is built once, and reused until the table changes. This
+     * makes simulating the hypothesis, for example by an equivalence oracle, much
+     * cheaper. If the reachable states do not fit in the memory budget, the
+     * hypothesis is not compiled.
+     *
+     * @param compileHypothesis True if the hypothesis should be compiled
+     */
+    public void setCompileHypothesis(boolean compileHypothesis) {
+        this.compileHypothesis = compileHypothesis;
+        this.compiledHypothesis = null;
     }
 
     @Override
     public MealyMachine<?, I, ?, O> getHypothesisModel() {
+        if (this.compileHypothesis) {
+            CompactMealy<I, O> compiled = this.getCompiledHypothesis();
+            if (compiled != null) {
+                return compiled;
+            }
+        }
         return new OutputMealyMachine(inputAlphabet, this.table.getOutputAlphabet(), this.table.getShortPrefixRows());
     }
 
+    /**
+     * @return The compiled hypothesis, built again if the table changed since it
+     *         was last built, or null if its states do not fit in the memory budget
+     */
+    private CompactMealy<I, O> getCompiledHypothesis() {
+        if (this.compiledHypothesis != null && this.compiledModCount == this.table.getModCount()) {
+            return this.compiledHypothesis;
+        }
+        this.compiledHypothesis = null;
+        ComponentProduct.Transitions transitions;
+        try (ComponentProduct product = this.buildComponentProduct(this.table.getShortPrefixRows())) {
+            transitions = product.compile();
+        }
+        if (transitions == null) {
+            return null;
+        }
+        Alphabet<O> outputAlphabet = this.table.getOutputAlphabet();
+        int inputCount = this.inputAlphabet.size();
+        CompactMealy<I, O> compiled = new CompactMealy<>(this.inputAlphabet, transitions.getStateCount());
+        compiled.addInitialState();
+        for (int s = 1; s < transitions.getStateCount(); s++) {
+            compiled.addState();
+        }
+        for (int s = 0; s < transitions.getStateCount(); s++) {
+            for (int a = 0; a < inputCount; a++) {
+                int active = transitions.getFirstActive(s, a);
+                O output = active < 0 ? null : outputAlphabet.getSymbol(active);
+                compiled.setTransition(s, a, transitions.getSuccessor(s, a), output);
+            }
+        }
+        this.compiledHypothesis = compiled;
+        this.compiledModCount = this.table.getModCount();
+        return compiled;
+    }
+
     @Override
     public boolean refineHypothesis(DefaultQuery<I, Word<O>> ce) {
-        return this.refineHypothesis(ce, true);
+        long start = this.startPhase(LearningListener.Phase.COUNTEREXAMPLE);
+        boolean refined = this.refineHypothesis(ce, true);
+        this.endPhase(LearningListener.Phase.COUNTEREXAMPLE, start);
+        return refined;
     }
 
     private boolean refineHypothesis(DefaultQuery<I, Word<O>> ce, boolean fixDefects) {
@@ -70,12 +251,13 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
         Word<I> ceWord = ce.getInput();
         do {
             refined = false;
-            for (int i = 1; i <= ceWord.length(); i++) {
+            Word<I> analyzed = this.counterexampleAnalyzer == null ? null : this.analyzeCounterexample(ce);
+            if (analyzed != null) {
+                refined = this.addSuffix(analyzed);
+            }
+            for (int i = 1; !refined && i <= ceWord.length(); i++) {
                 Word<I> suffix = ceWord.suffix(i);
-                refined = table.addSuffix(suffix);
-                if (refined) {
-                    break;
-                }
+                refined = this.addSuffix(suffix);
             }
             refined |= this.closeTable();
         } while (this.isCounterexample(ce));
@@ -92,49 +274,131 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
      * @return True if the query is a counterexample
      */
     private boolean isCounterexample(DefaultQuery<I, Word<O>> ce) {
-        MealyMachine<?, I, ?, O> hypothesis = this.getHypothesisModel();
-        Word<O> output = hypothesis.computeSuffixOutput(ce.getPrefix(), ce.getSuffix());
+        Word<O> output = this.getCurrentHypothesis().computeSuffixOutput(ce.getPrefix(), ce.getSuffix());
         return !output.equals(ce.getOutput());
     }
 
     /**
-     * Chooses the row which should be moved from a long prefix row to
-     * a short prefix row
+     * @return The compiled hypothesis if it is up to date, and an
+     *         {@link OutputMealyMachine} otherwise, since compiling a hypothesis
+     *         for a single word only pays off if it is reused
+     */
+    private MealyMachine<?, I, ?, O> getCurrentHypothesis() {
+        if (this.compiledHypothesis != null && this.compiledModCount == this.table.getModCount()) {
+            return this.compiledHypothesis;
+        }
+        return new OutputMealyMachine(inputAlphabet, this.table.getOutputAlphabet(), this.table.getShortPrefixRows());
+    }
+
+    /**
+     * Finds a suffix of a counterexample which separates two rows, in the way of
+     * Rivest and Schapire. The counterexample is analyzed for a single output o
+     * for which the hypothesis is wrong. Let q_i be the row of the component of o
+     * reached by the first i symbols of the counterexample. Then the effect at i
+     * tells if the target after the label of q_i agrees with the component on
+     * the rest of the counterexample. The effect at 0 is false and the effect at
+     * the end is true, so the analyzer finds an i at which it changes. The rows
+     * q_i followed by the next symbol and q_(i+1) then have the same contents for
+     * o, but differ on the rest of the counterexample after that symbol.
      *
-     * @param unclosed The list of equivalence classes of unclosed rows
-     * @return The row with which to close the list
-     * @implNote The row which would close the most defects on its own is chosen.
-     *           This may not always lead to the smallest total number of rows we
-     *           need to choose. However, this is NP-complete, since it is the
-     *           (implicit) hitting set problem.
+     * @param ce The counterexample
+     * @return The suffix to be added, or null if the counterexample could not be
+     *         analyzed, for example because it shows a new output symbol
+     */
+    private Word<I> analyzeCounterexample(DefaultQuery<I, Word<O>> ce) {
+        if (!ce.getPrefix().isEmpty()) {
+            return null;
+        }
+        Word<I> input = ce.getInput();
+        Word<O> hypothesisOutput = this.getCurrentHypothesis().computeOutput(input);
+        int mismatch = 0;
+        while (mismatch < input.length()
+                && Objects.equals(hypothesisOutput.getSymbol(mismatch), ce.getOutput().getSymbol(mismatch))) {
+            mismatch++;
+        }
+        if (mismatch == input.length()) {
+            return null;
+        }
+        // The component of the output given by the hypothesis is wrong at the
+        // mismatch, and if there is none, the component of the output of the target
+        GrowingAlphabet<O> outputAlphabet = this.table.getOutputAlphabet();
+        O output = hypothesisOutput.getSymbol(mismatch) != null ? hypothesisOutput.getSymbol(mismatch)
+                : ce.getOutput().getSymbol(mismatch);
+        if (!outputAlphabet.containsSymbol(output)) {
+            return null;
+        }
+        int outputIndex = outputAlphabet.getSymbolIndex(output);
+
+        List<OutputRow<I, O>> componentRows = new ArrayList<>(input.length() + 1);
+        OutputRow<I, O> row = this.table.getShortPrefixRows().get(0).getShortRow(outputIndex);
+        componentRows.add(row);
+        for (I symbol : input) {
+            row = row.getSuccessor(this.inputAlphabet.getSymbolIndex(symbol)).getShortRow(outputIndex);
+            componentRows.add(row);
+        }
+        OutputCounterexample acex = new OutputCounterexample(input, output, outputIndex, componentRows);
+        if (acex.effect(0)) {
+            // The initial row of the component does not behave like the empty word
+            return input;
+        }
+        int breakpoint = this.counterexampleAnalyzer.analyzeAbstractCounterexample(acex);
+        Word<I> suffix = input.subWord(breakpoint + 1);
+        return suffix.isEmpty() ? null : suffix;
+    }
+
+    /**
+     * The effects of a counterexample for the component of an output, see
+     * {@link OutputLstar#analyzeCounterexample(DefaultQuery)}. Every effect costs
+     * a membership query, except the effect at the end, which is always true.
      */
-    private OutputRow<I, O> selectClosingRow(List<List<OutputRow<I, O>>> unclosed) {
-        OutputRow<I, O> bestRow = null;
-        Integer bestCount = 0;
-        HashMap<Word<I>, Integer> rowCounts = new HashMap<>();
-        for (List<OutputRow<I, O>> rows : unclosed) {
-            for (OutputRow<I, O> row : rows) {
-                Integer rowCount = rowCounts.getOrDefault(row.getLabel(), 0) + 1;
-                rowCounts.put(row.getLabel(), rowCount);
-                if (rowCount > bestCount) {
-                    bestRow = row;
-                    bestCount = rowCount;
+    private class OutputCounterexample extends AbstractBaseCounterexample<Boolean> {
+
+        private final Word<I> input;
+        private final O output;
+        private final int outputIndex;
+        private final List<OutputRow<I, O>> componentRows;
+
+        OutputCounterexample(Word<I> input, O output, int outputIndex, List<OutputRow<I, O>> componentRows) {
+            super(input.length() + 1);
+            this.input = input;
+            this.output = output;
+            this.outputIndex = outputIndex;
+            this.componentRows = componentRows;
+            this.setEffect(input.length(), true);
+        }
+
+        @Override
+        protected Boolean computeEffect(int index) {
+            Word<O> answer = mqOracle.answerQuery(this.componentRows.get(index).getLabel(),
+                    this.input.subWord(index));
+            for (int i = index; i < this.input.length(); i++) {
+                OutputRow<I, O> row = this.componentRows.get(i);
+                boolean expected = row.getOutputIndex(inputAlphabet.getSymbolIndex(this.input.getSymbol(i)))
+                        == this.outputIndex;
+                if (answer.getSymbol(i - index).equals(this.output) != expected) {
+                    return false;
                 }
             }
+            return true;
+        }
+
+        @Override
+        public boolean checkEffects(Boolean effect1, Boolean effect2) {
+            return effect1.equals(effect2);
         }
-        return bestRow;
     }
 
-    private <T> T mostCommon(List<T> list) {
+    /**
+     * @return The element with the highest count, or the first of those elements
+     *         in the order of the multiset
+     */
+    private <T> T mostCommon(Multiset<T> multiset) {
         T best = null;
-        Integer bestCount = 0;
-        HashMap<T, Integer> counts = new HashMap<>();
-        for (T item : list) {
-            Integer count = counts.getOrDefault(item, 0) + 1;
-            counts.put(item, count);
-            if (count > bestCount) {
-                best = item;
-                bestCount = count;
+        int bestCount = 0;
+        for (Multiset.Entry<T> entry : multiset.entrySet()) {
+            if (entry.getCount() > bestCount) {
+                best = entry.getElement();
+                bestCount = entry.getCount();
             }
         }
         return best;
@@ -144,15 +408,70 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
     public void startLearning() {
         List<Word<I>> prefixes = Collections.singletonList(Word.epsilon());
         List<Word<I>> suffixes = this.inputAlphabet.stream().map(Word::fromLetter).toList();
+        long start = this.startPhase(LearningListener.Phase.INITIALIZE);
         this.table.initialize(prefixes, suffixes);
+        this.endPhase(LearningListener.Phase.INITIALIZE, start);
+        this.closeTable();
+        this.fixReachableDefects();
+    }
+
+    /**
+     * Starts learning from a snapshot of the observation table of an earlier run,
+     * instead of from a table with only the empty prefix.
+     *
+     * @param snapshot     The snapshot, for example read with
+     *                     {@link TableSnapshot#read}
+     * @param reuseAnswers True if the cells of the snapshot should be used as they
+     *                     are, false if they should be asked again because the
+     *                     target may have changed
+     */
+    public void startLearning(TableSnapshot<I, O> snapshot, boolean reuseAnswers) {
+        long start = this.startPhase(LearningListener.Phase.INITIALIZE);
+        this.table.initialize(snapshot, reuseAnswers);
+        this.endPhase(LearningListener.Phase.INITIALIZE, start);
         this.closeTable();
         this.fixReachableDefects();
     }
 
+    /**
+     * @return A snapshot of the observation table, from which learning can be
+     *         resumed with {@link #startLearning(TableSnapshot, boolean)}
+     */
+    public TableSnapshot<I, O> createSnapshot() {
+        return TableSnapshot.of(this.table);
+    }
+
     public OutputObservationTable<I, O> getObservationTable() {
         return this.table;
     }
 
+    @Override
+    public int getComponentCount() {
+        return this.table.getOutputAlphabet().size();
+    }
+
+    /**
+     * The states of the component of an output are the short rows which the
+     * short prefix rows are equal to for that output.
+     */
+    @Override
+    public List<Word<I>> getComponentAccessSequences(int component) {
+        LinkedHashSet<Word<I>> labels = new LinkedHashSet<>();
+        for (OutputRow<I, O> row : this.table.getShortPrefixRows()) {
+            labels.add(row.getShortRow(component).getLabel());
+        }
+        return new ArrayList<>(labels);
+    }
+
+    /**
+     * Rows which differ for an output differ in one of the suffixes of the table,
+     * so the suffixes distinguish the states of every component.
+     */
+    @Override
+    public List<Word<I>> getComponentSuffixes(int component) {
+        return this.table.getSuffixes();
+    }
+
     /**
      * Makes sure the observation table is output-closed (and output-consistent)
      *
@@ -160,40 +479,46 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
      *         columns added to the table)
      */
     private boolean closeTable() {
+        long start = this.startPhase(LearningListener.Phase.CLOSING);
         boolean refined = false;
         if (this.table.isRegularClosed()) {
+            this.event(LearningListener.Event.REGULAR_CLOSED, null);
+            this.endPhase(LearningListener.Phase.CLOSING, start);
             return false;
         }
         List<List<OutputRow<I, O>>> unclosed = this.table.findUnclosedRows();
         while (!unclosed.isEmpty()) {
-            OutputRow<I, O> newShortRow = this.selectClosingRow(unclosed);
-            this.table.makeShort(newShortRow);
+            for (OutputRow<I, O> newShortRow : this.closingStrategy.selectClosingRows(unclosed)) {
+                this.makeShort(newShortRow);
+            }
             refined = true;
             if (this.table.isRegularClosed()) {
+                this.event(LearningListener.Event.REGULAR_CLOSED, null);
+                this.endPhase(LearningListener.Phase.CLOSING, start);
                 return true;
             }
             unclosed = this.table.findUnclosedRows();
         }
+        this.endPhase(LearningListener.Phase.CLOSING, start);
         if (checkConsistency && useFirstInconsistency) {
+            start = this.startPhase(LearningListener.Phase.CONSISTENCY);
             Word<I> inconsistency = this.table.findInconsistentRows();
+            this.endPhase(LearningListener.Phase.CONSISTENCY, start);
             if (inconsistency != null) {
-                this.inconsistentCount += 1;
-                System.out.println(String.valueOf(this.table.getShortPrefixRows().size()) + " / Inconsistency: "
-                        + inconsistency.toString());
-                this.table.addSuffix(inconsistency);
+                this.event(LearningListener.Event.INCONSISTENCY, inconsistency);
+                this.addSuffix(inconsistency);
                 refined = true;
                 this.closeTable();
             }
         } else if (checkConsistency) {
-            List<Word<I>> inconsistencies = this.table.findAllInconsistentRows();
+            start = this.startPhase(LearningListener.Phase.CONSISTENCY);
+            Multiset<Word<I>> inconsistencies = this.table.findAllInconsistentRows();
+            this.endPhase(LearningListener.Phase.CONSISTENCY, start);
             if (!inconsistencies.isEmpty()) {
                 Word<I> toFix = mostCommon(inconsistencies);
-                this.table.addSuffix(toFix);
+                this.event(LearningListener.Event.INCONSISTENCY, toFix);
+                this.addSuffix(toFix);
                 refined = true;
-                this.inconsistentCount += 1;
-                System.out.println(String.valueOf(this.table.getShortPrefixRows().size()) + " / Inconsistency: "
-                        + toFix.toString());
-                inconsistencies.clear();
                 this.closeTable();
             }
         }
@@ -201,74 +526,83 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
     }
 
     /**
-     * Run a breadth first search to find if two components output 1 at the same
-     * time
+     * Find input word for which multiple components output 1.
+     * All pairs of outputs are checked at the same time, by a single breadth first
+     * search over the reachable states of the hypothesis.
      *
-     * @param hypothesis The hypothesis to be searched
-     * @return Query (already answered) for the word which leads to 2 outputs, or
-     *         null if none exist
+     * @return Query (already answered) for a shortest word for which multiple
+     *         components output 1, or null if none exist
      */
-    private DefaultQuery<I, Word<O>> findTwoOutputs(ProjectedOutputMealyMachine hypothesis) {
-        Set<Pair<OutputRow<I, O>, OutputRow<I, O>>> reach = new HashSet<>();
-        Queue<Pair<OutputRow<I, O>, OutputRow<I, O>>> bfsQueue = new ArrayDeque<>();
-        Pair<OutputRow<I, O>, OutputRow<I, O>> init = hypothesis.getInitialState();
-        bfsQueue.add(init);
-        Queue<WordBuilder<I>> accessSequences = new ArrayDeque<>();
-        accessSequences.add(new WordBuilder<>());
-
-        Pair<OutputRow<I, O>, OutputRow<I, O>> curr;
-        while ((curr = bfsQueue.poll()) != null) {
-            WordBuilder<I> wb = accessSequences.poll();
-            if (reach.contains(curr)) {
-                continue;
-            }
+    private DefaultQuery<I, Word<O>> findMultipleOutputs() {
+        int[] path;
+        try (ComponentProduct product = this.buildComponentProduct(this.table.getShortPrefixRows())) {
+            path = product.findTransition(active -> active >= 2);
+            this.checkExhaustive(product, path);
+        }
+        if (path == null) {
+            return null;
+        }
+        Word<I> w = this.toWord(path);
+        this.event(LearningListener.Event.MULTIPLE_OUTPUTS, w);
+        DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(w);
+        ce.answer(this.mqOracle.answerQuery(w));
+        return ce;
+    }
 
-            for (I in : this.inputAlphabet) {
-                WordBuilder<I> wbin = new WordBuilder<>(wb.toWord());
-                wbin.add(in);
-                Pair<Pair<Boolean, OutputRow<I, O>>, Pair<Boolean, OutputRow<I, O>>> transition = hypothesis
-                        .getTransition(curr, in);
-                if (transition.getFirst().getFirst() && transition.getSecond().getFirst()) {// We have found a defect
-                    this.twoOutputsCount += 1;
-                    Word<I> w = wbin.toWord();
-                    DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(w);
-                    ce.answer(this.mqOracle.answerQuery(w));
-                    return ce;
-                }
-                Pair<OutputRow<I, O>, OutputRow<I, O>> succ = hypothesis.getSuccessor(transition);
-                if (succ == null)
-                    continue;
+    /**
+     * Reports an {@link LearningListener.Event#INCOMPLETE_SEARCH} if a search
+     * found nothing, but may have skipped states because it ran out of memory
+     */
+    private void checkExhaustive(ComponentProduct product, int[] path) {
+        if (path == null && !product.isExhaustive()) {
+            this.event(LearningListener.Event.INCOMPLETE_SEARCH, null);
+        }
+    }
 
-                if (!reach.contains(succ)) {
-                    bfsQueue.add(succ);
-                    accessSequences.add(wbin);
-                }
-            }
-            reach.add(curr);
+    private Word<I> toWord(int[] inputIndices) {
+        WordBuilder<I> wb = new WordBuilder<>(inputIndices.length);
+        for (int inputIndex : inputIndices) {
+            wb.add(this.inputAlphabet.getSymbol(inputIndex));
         }
-        return null;
+        return wb.toWord();
     }
 
     /**
-     * Find input word for which multiple components output 1.
-     * This check is done pairwise for each pair of outputs.
+     * Encodes the hypothesis as the product of its components, with one component
+     * for every output. The states of every component are the short prefix rows,
+     * numbered by their position in the given list.
      *
-     * @return Query for which multiple components output 1
+     * @param shortRows The short prefix rows, starting with the row of the empty
+     *                  word
+     * @return The product of the components
      */
-    private DefaultQuery<I, Word<O>> findMultipleOutputs() {
-        OutputMealyMachine hypothesis = new OutputMealyMachine(inputAlphabet, this.table.getOutputAlphabet(),
-                this.table.getShortPrefixRows());
-        int n = this.table.getOutputAlphabet().size();
-        for (int firstIndex = 0; firstIndex < n - 1; firstIndex++) {
-            for (int secondIndex = firstIndex + 1; secondIndex < n; secondIndex++) {
-                ProjectedOutputMealyMachine currentMachine = hypothesis.project(firstIndex, secondIndex);
-                DefaultQuery<I, Word<O>> ce = this.findTwoOutputs(currentMachine);
-                if (ce != null) {
-                    return ce;
+    private ComponentProduct buildComponentProduct(List<OutputRow<I, O>> shortRows) {
+        int maxRowId = 0;
+        for (OutputRow<I, O> row : shortRows) {
+            maxRowId = Math.max(maxRowId, row.getRowId());
+        }
+        int[] stateOfRow = new int[maxRowId + 1];
+        for (int s = 0; s < shortRows.size(); s++) {
+            stateOfRow[shortRows.get(s).getRowId()] = s;
+        }
+        OutputRowStore<I, O> store = this.table.getRowStore();
+        int inputCount = this.inputAlphabet.size();
+        int outputCount = this.table.getOutputAlphabet().size();
+        int[] initialStates = new int[outputCount];
+        int[][] successors = new int[outputCount][shortRows.size() * inputCount];
+        boolean[][] outputs = new boolean[outputCount][shortRows.size() * inputCount];
+        for (int i = 0; i < outputCount; i++) {
+            initialStates[i] = stateOfRow[store.getShortRow(shortRows.get(0).getRowId(), i)];
+            for (int s = 0; s < shortRows.size(); s++) {
+                int rowId = shortRows.get(s).getRowId();
+                for (int a = 0; a < inputCount; a++) {
+                    successors[i][s * inputCount + a] = stateOfRow[store.getShortRow(store.getSuccessor(rowId, a), i)];
+                    outputs[i][s * inputCount + a] = store.getOutput(rowId, a) == i;
                 }
             }
         }
-        return null;
+        return new ComponentProduct(inputCount, initialStates, successors, outputs, this.productMemoryBudget,
+                null);
     }
 
     /**
@@ -277,48 +611,19 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
      * @return Query (already answered) for which the defect happens
      */
     private DefaultQuery<I, Word<O>> findZeroOutputs() {
-        OutputMealyMachine hypothesis = new OutputMealyMachine(
-                inputAlphabet, this.table.getOutputAlphabet(), this.table.getShortPrefixRows());
-        System.out.println("States: " + hypothesis.getStates().size());
-        Set<List<OutputRow<I, O>>> reach = new HashSet<>();
-        Queue<List<OutputRow<I, O>>> bfsQueue = new ArrayDeque<>();
-        List<OutputRow<I, O>> init = hypothesis.getInitialState();
-        bfsQueue.add(init);
-        Queue<WordBuilder<I>> accessSequences = new ArrayDeque<>();
-        accessSequences.add(new WordBuilder<>());
-
-        List<OutputRow<I, O>> curr;
-        while ((curr = bfsQueue.poll()) != null) {
-            WordBuilder<I> wb = accessSequences.poll();
-            if (reach.contains(curr)) {
-                continue;
-            }
-
-            for (I in : this.inputAlphabet) {
-                WordBuilder<I> wbin = new WordBuilder<>(wb.toWord());
-                wbin.add(in);
-                List<Pair<Boolean, OutputRow<I, O>>> transition = hypothesis.getTransition(curr, in);
-                List<Boolean> outputs = transition.stream().map(Pair::getFirst).toList();
-                long trueCount = Collections.frequency(outputs, true);
-                if (trueCount == 0) {// We have found a defect
-                    this.zeroOutputsCount += 1;
-                    Word<I> w = wbin.toWord();
-                    DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(w);
-                    ce.answer(this.mqOracle.answerQuery(w));
-                    return ce;
-                }
-                List<OutputRow<I, O>> succ = hypothesis.getSuccessor(transition);
-                if (succ == null)
-                    continue;
-
-                if (!reach.contains(succ)) {
-                    bfsQueue.add(succ);
-                    accessSequences.add(wbin);
-                }
-            }
-            reach.add(curr);
+        int[] path;
+        try (ComponentProduct product = this.buildComponentProduct(this.table.getShortPrefixRows())) {
+            path = product.findTransition(active -> active == 0);
+            this.checkExhaustive(product, path);
+        }
+        if (path == null) {
+            return null;
         }
-        return null;
+        Word<I> w = this.toWord(path);
+        this.event(LearningListener.Event.ZERO_OUTPUTS, w);
+        DefaultQuery<I, Word<O>> ce = new DefaultQuery<>(w);
+        ce.answer(this.mqOracle.answerQuery(w));
+        return ce;
     }
 
     /**
@@ -332,8 +637,11 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
      * @implSpec Assumes that the table is closed before this is called
      */
     public DefaultQuery<I, Word<O>> findReachableDefect() {
+        long start = this.startPhase(LearningListener.Phase.DEFECT_SEARCH);
         DefaultQuery<I, Word<O>> multipleOutputs = this.findMultipleOutputs();
-        return multipleOutputs != null ? multipleOutputs : this.findZeroOutputs();
+        DefaultQuery<I, Word<O>> defect = multipleOutputs != null ? multipleOutputs : this.findZeroOutputs();
+        this.endPhase(LearningListener.Phase.DEFECT_SEARCH, start);
+        return defect;
     }
 
     /**
@@ -351,7 +659,7 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
             List<Boolean> outputs = transition.stream().map(Pair::getFirst).toList();
             long trueCount = Collections.frequency(outputs, true);
             if (trueCount != 1) {
-                System.out.println("Same defect");
+                this.event(LearningListener.Event.SAME_DEFECT, ce.getInput());
                 return true;
             }
             state = hypothesis.getSuccessor(transition);
@@ -363,17 +671,38 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
      * Finds and fixes reachable defects until there are none remaining.
      */
     private void fixReachableDefects() {
-        System.out.println("Short rows: " + this.table.getShortPrefixRows().size());
         DefaultQuery<I, Word<O>> ce = this.findReachableDefect();
         while (ce != null) {
-            System.out.println("Defect found: " + ce.toString());
-            System.out.println("Short rows: " + this.table.getShortPrefixRows().size());
             do {
                 this.refineHypothesis(ce, false);
             } while (this.retryDefect(ce));
             ce = this.findReachableDefect();
         }
-        System.out.println("No more defects");
+    }
+
+    /**
+     * Tells the listener about the membership queries, which are timed as a
+     * phase of their own
+     */
+    private class ListenedOracle implements MembershipOracle<I, Word<O>> {
+
+        private final MembershipOracle<I, Word<O>> delegate;
+
+        ListenedOracle(MembershipOracle<I, Word<O>> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+            if (listener == LearningListener.NONE) {
+                this.delegate.processQueries(queries);
+                return;
+            }
+            long start = System.nanoTime();
+            this.delegate.processQueries(queries);
+            listener.phaseFinished(LearningListener.Phase.MEMBERSHIP_QUERIES, System.nanoTime() - start);
+            listener.queriesAsked(queries.size());
+        }
     }
 
     /**
@@ -405,35 +734,59 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
             return transition.stream().map(Pair::getSecond).toList();
         }
 
+        /**
+         * The reachable states are found by {@link ComponentProduct}, which stores
+         * them compactly. The returned collection creates the lists of rows while it
+         * is iterated, instead of keeping all of them in memory.
+         *
+         * @throws IllegalStateException If the states do not fit in the memory
+         *                               budget, so that some may be missing
+         */
         @Override
         public Collection<List<OutputRow<I, O>>> getStates() {
             if (cachedStates != null) {
                 return cachedStates;
             }
-            Set<List<OutputRow<I, O>>> reach = new HashSet<>();
-            Queue<List<OutputRow<I, O>>> bfsQueue = new ArrayDeque<>();
-
-            List<OutputRow<I, O>> init = getInitialState();
-
-            bfsQueue.add(init);
-
-            List<OutputRow<I, O>> curr;
-            while ((curr = bfsQueue.poll()) != null) {
-                if (reach.contains(curr))
-                    continue;
-
-                for (I in : this.inputAlphabet) {
-                    List<OutputRow<I, O>> succ = getSuccessor(curr, in);
-                    if (succ == null)
-                        continue;
+            List<OutputRow<I, O>> snapshot = new ArrayList<>(this.rows);
+            ComponentProduct product = buildComponentProduct(snapshot);
+            long stateCount = product.explore();
+            if (!product.isExhaustive()) {
+                product.close();
+                throw new IllegalStateException("The " + stateCount
+                        + " states found so far exceed the memory budget, and states may be missing");
+            }
+            cachedStates = new AbstractCollection<>() {
+                @Override
+                public Iterator<List<OutputRow<I, O>>> iterator() {
+                    return new Iterator<>() {
+                        private long next = 0;
+                        private final int[] tuple = new int[product.getComponentCount()];
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.next < stateCount;
+                        }
+
+                        @Override
+                        public List<OutputRow<I, O>> next() {
+                            if (!this.hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            product.getState(this.next++, this.tuple);
+                            List<OutputRow<I, O>> state = new ArrayList<>(this.tuple.length);
+                            for (int rowIndex : this.tuple) {
+                                state.add(snapshot.get(rowIndex));
+                            }
+                            return state;
+                        }
+                    };
+                }
 
-                    if (!reach.contains(succ)) {
-                        bfsQueue.add(succ);
-                    }
+                @Override
+                public int size() {
+                    return (int) Math.min(stateCount, Integer.MAX_VALUE);
                 }
-                reach.add(curr);
-            }
-            cachedStates = reach;
+            };
             return cachedStates;
         }
 
@@ -449,8 +802,7 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
             for (int i = 0; i < state.size(); i++) {
                 OutputRow<I, O> currentRow = state.get(i);
                 OutputRow<I, O> nextRow = currentRow.getSuccessor(inputIndex);
-                O currentOutput = outputAlphabet.getSymbol(i);
-                Boolean nextOutput = currentRow.getOutput(inputIndex).equals(currentOutput);
+                Boolean nextOutput = currentRow.getOutputIndex(inputIndex) == i;
                 transition.add(Pair.of(nextOutput, nextRow.getShortRow(i)));
             }
             return transition;
@@ -470,121 +822,5 @@ public class OutputLstar<I, O> implements MealyLearner<I, O> {
             }
             return null;
         }
-
-        /**
-         * Project the Mealy machine on two outputs.
-         * This can be used to check if two outputs are active at the same time.
-         * Checking for multiple outputs in this way is more space efficient,
-         * since the projected machines have a smaller state space.
-         *
-         * @param firstIndex  The index of the first output
-         * @param secondIndex The index of the second output
-         * @return
-         */
-        public ProjectedOutputMealyMachine project(int firstIndex, int secondIndex) {
-            return new ProjectedOutputMealyMachine(this.inputAlphabet, this.outputAlphabet, this.rows,
-                    firstIndex, secondIndex);
-        }
-    }
-
-    /**
-     * Creates a Mealy machine which only outputs the two specified outputs,
-     * and outputs null when neither output is active.
-     */
-    public class ProjectedOutputMealyMachine
-            implements
-            MealyMachine<Pair<OutputRow<I, O>, OutputRow<I, O>>, I, Pair<Pair<Boolean, OutputRow<I, O>>, Pair<Boolean, OutputRow<I, O>>>, O> {
-
-        Alphabet<I> inputAlphabet;
-        O firstOutput;
-        O secondOutput;
-        /**
-         * Short prefix rows. This is the underlying state space of the automaton.
-         */
-        List<OutputRow<I, O>> rows;
-        Collection<Pair<OutputRow<I, O>, OutputRow<I, O>>> cachedStates;
-        int firstIndex;
-        int secondIndex;
-
-        public ProjectedOutputMealyMachine(Alphabet<I> inputAlphabet, Alphabet<O> outputAlphabet,
-                List<OutputRow<I, O>> rows, int firstIndex, int secondIndex) {
-            this.inputAlphabet = inputAlphabet;
-            this.firstOutput = outputAlphabet.getSymbol(firstIndex);
-            this.secondOutput = outputAlphabet.getSymbol(secondIndex);
-            this.rows = rows;
-            this.firstIndex = firstIndex;
-            this.secondIndex = secondIndex;
-        }
-
-        @Override
-        public Pair<OutputRow<I, O>, OutputRow<I, O>> getSuccessor(
-                Pair<Pair<Boolean, OutputRow<I, O>>, Pair<Boolean, OutputRow<I, O>>> transition) {
-            return Pair.of(transition.getFirst().getSecond(), transition.getSecond().getSecond());
-        }
-
-        @Override
-        public Collection<Pair<OutputRow<I, O>, OutputRow<I, O>>> getStates() {
-            if (cachedStates != null) {
-                return cachedStates;
-            }
-            Set<Pair<OutputRow<I, O>, OutputRow<I, O>>> reach = new HashSet<>();
-            Queue<Pair<OutputRow<I, O>, OutputRow<I, O>>> bfsQueue = new ArrayDeque<>();
-
-            Pair<OutputRow<I, O>, OutputRow<I, O>> init = getInitialState();
-
-            bfsQueue.add(init);
-
-            Pair<OutputRow<I, O>, OutputRow<I, O>> curr;
-            while ((curr = bfsQueue.poll()) != null) {
-                if (reach.contains(curr))
-                    continue;
-
-                for (I in : this.inputAlphabet) {
-                    Pair<OutputRow<I, O>, OutputRow<I, O>> succ = getSuccessor(curr, in);
-                    if (succ == null)
-                        continue;
-
-                    if (!reach.contains(succ)) {
-                        bfsQueue.add(succ);
-                    }
-                }
-                reach.add(curr);
-            }
-            cachedStates = reach;
-            return cachedStates;
-        }
-
-        @Override
-        public @Nullable Pair<OutputRow<I, O>, OutputRow<I, O>> getInitialState() {
-            List<OutputRow<I, O>> initial = this.rows.get(0).getShortRows();
-            return Pair.of(initial.get(firstIndex), initial.get(secondIndex));
-        }
-
-        @Override
-        public @Nullable Pair<Pair<Boolean, OutputRow<I, O>>, Pair<Boolean, OutputRow<I, O>>> getTransition(
-                Pair<OutputRow<I, O>, OutputRow<I, O>> state, I input) {
-            int inputIndex = inputAlphabet.getSymbolIndex(input);
-            OutputRow<I, O> firstSuccessor = state.getFirst().getSuccessor(inputIndex).getShortRow(this.firstIndex);
-            Boolean firstTrue = state.getFirst().getOutput(inputIndex).equals(this.firstOutput);
-            OutputRow<I, O> secondSuccessor = state.getSecond().getSuccessor(inputIndex).getShortRow(this.secondIndex);
-            Boolean secondTrue = state.getSecond().getOutput(inputIndex).equals(this.secondOutput);
-            return Pair.of(Pair.of(firstTrue, firstSuccessor), Pair.of(secondTrue, secondSuccessor));
-        }
-
-        @Override
-        public Void getStateProperty(Pair<OutputRow<I, O>, OutputRow<I, O>> state) {
-            return null;
-        }
-
-        @Override
-        public O getTransitionOutput(Pair<Pair<Boolean, OutputRow<I, O>>, Pair<Boolean, OutputRow<I, O>>> transition) {
-            if (transition.getFirst().getFirst()) {
-                return this.firstOutput;
-            }
-            if (transition.getSecond().getFirst()) {
-                return this.secondOutput;
-            }
-            return null;
-        }
     }
 }
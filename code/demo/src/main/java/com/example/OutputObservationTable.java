@@ -1,15 +1,19 @@
 package com.example;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.collect.LinkedHashMultiset;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
 
 import de.learnlib.oracle.MembershipOracle;
 import de.learnlib.query.DefaultQuery;
@@ -17,36 +21,83 @@ import net.automatalib.alphabet.Alphabet;
 import net.automatalib.alphabet.GrowingAlphabet;
 import net.automatalib.alphabet.GrowingMapAlphabet;
 import net.automatalib.word.Word;
-import net.automatalib.word.WordBuilder;
 
 /**
  * Observation table used by OL*.
  */
 public class OutputObservationTable<I, O> {
 
+    /** By default, all queries of a refinement step are sent in one batch */
+    public static final int DEFAULT_MAX_BATCH_SIZE = Integer.MAX_VALUE;
+
     private final Alphabet<I> inputAlphabet;
     private final GrowingAlphabet<O> outputAlphabet;
 
     private final MembershipOracle<I, Word<O>> mqOracle;
+    private final int maxBatchSize;
 
     private final List<OutputRow<I, O>> shortPrefixRows = new ArrayList<>();
     private final List<OutputRow<I, O>> longPrefixRows = new ArrayList<>();
     private final List<OutputRow<I, O>> allRows = new ArrayList<>();
-    private final Map<List<Word<O>>, Integer> rowContentIds = new HashMap<>();
+    private final Map<PackedCellStore.RowKey, Integer> rowContentIds = new HashMap<>();
     /**
      * For every output symbol, maps the contents of a row for that output to
      * the ids of the short prefix rows with those contents
      */
-    private final List<Map<List<Word<Boolean>>, List<Integer>>> outputContentIds = new ArrayList<>();
+    private final List<Map<OutputSignature, List<Integer>>> outputContentIds = new ArrayList<>();
+    /**
+     * For every row id, the contents of that row projected on every output
+     */
+    private final List<OutputSignature[]> signatures = new ArrayList<>();
+    /**
+     * For every output symbol, the rows which are unclosed for that output,
+     * grouped by their contents for that output. Kept up to date when rows or
+     * short prefix rows are added, and rebuilt when suffixes are added.
+     */
+    private final List<Map<OutputSignature, List<OutputRow<I, O>>>> unclosedRows = new ArrayList<>();
+    /**
+     * The rows whose contents are not equal to the contents of a short prefix
+     * row, grouped by their contents
+     */
+    private final Map<PackedCellStore.RowKey, List<OutputRow<I, O>>> regularUnclosedRows = new HashMap<>();
+    /**
+     * Set when {@link #isRegularClosed()} has pointed the closed rows to short
+     * prefix rows other than the first short prefix row in their class
+     */
+    private boolean shortRowsReassigned = false;
+    /** Incremented whenever the hypothesis of the table may have changed */
+    private int modCount = 0;
 
     private final List<Word<I>> suffixes = new ArrayList<>();
     private final Set<Word<I>> suffixSet = new HashSet<>();
-    private ArrayList<ArrayList<Word<O>>> table = new ArrayList<>();
+    /**
+     * The cells of the table, with the output symbols interned as their index in
+     * the output alphabet
+     */
+    private final PackedCellStore table = new PackedCellStore();
+    /** The successors, short rows and outputs of the rows */
+    private final OutputRowStore<I, O> rows;
 
     public OutputObservationTable(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle) {
+        this(inputAlphabet, mqOracle, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param inputAlphabet The input alphabet of the target
+     * @param mqOracle      The oracle to be used for membership queries
+     * @param maxBatchSize  The maximum number of queries sent to the oracle in a
+     *                      single call to {@link MembershipOracle#processQueries}
+     */
+    public OutputObservationTable(Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> mqOracle,
+            int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size should be positive, but was " + maxBatchSize);
+        }
         this.inputAlphabet = inputAlphabet;
         this.outputAlphabet = new GrowingMapAlphabet<>();
+        this.rows = new OutputRowStore<>(inputAlphabet.size(), this.outputAlphabet);
         this.mqOracle = mqOracle;
+        this.maxBatchSize = maxBatchSize;
     }
 
     /**
@@ -58,11 +109,39 @@ public class OutputObservationTable<I, O> {
      * @param suffixes The initial suffixes
      */
     public void initialize(List<Word<I>> prefixes, List<Word<I>> suffixes) {
+        this.initialize(prefixes, suffixes, this.mqOracle);
+    }
+
+    /**
+     * Initialize the observation table with the short prefixes, suffixes and
+     * output symbols of a snapshot. The output symbols keep their order, so the
+     * table is the same as the table the snapshot was taken of, apart from the
+     * order of its rows.
+     *
+     * @param snapshot     The snapshot
+     * @param reuseAnswers True if the cells should be filled in from the
+     *                     snapshot, false if they should be asked to the
+     *                     membership oracle again, for example because the
+     *                     target has changed since the snapshot was taken
+     */
+    public void initialize(TableSnapshot<I, O> snapshot, boolean reuseAnswers) {
+        if (!this.allRows.isEmpty()) {
+            throw new IllegalStateException("Called initialize, but the table was already initialized");
+        }
+        for (O output : snapshot.getOutputs()) {
+            this.addOutputSymbol(output);
+        }
+        this.initialize(snapshot.getShortPrefixes(), snapshot.getSuffixes(),
+                reuseAnswers ? snapshot.asOracle() : this.mqOracle);
+    }
+
+    private void initialize(List<Word<I>> prefixes, List<Word<I>> suffixes, MembershipOracle<I, Word<O>> oracle) {
         assertInitializeValid(prefixes, suffixes);
 
         for (Word<I> suffix : suffixes) {
             if (this.suffixSet.add(suffix)) {
                 this.suffixes.add(suffix);
+                this.table.addSuffix(suffix.length());
             }
         }
 
@@ -91,22 +170,19 @@ public class OutputObservationTable<I, O> {
             }
         }
 
-        this.mqOracle.processQueries(queries);
+        this.processQueries(queries, oracle);
         this.growOutputAlphabet(queries);
 
         Iterator<DefaultQuery<I, Word<O>>> queryIt = queries.iterator();
 
         for (OutputRow<I, O> spRow : this.shortPrefixRows) {
-            List<Word<O>> rowContents = new ArrayList<>(suffixes.size());
-            this.fetchResults(queryIt, rowContents);
-            this.processContents(spRow, rowContents);
+            this.processContents(spRow, queryIt);
         }
 
         for (OutputRow<I, O> lpRow : this.longPrefixRows) {
-            List<Word<O>> rowContents = new ArrayList<>(suffixes.size());
-            this.fetchResults(queryIt, rowContents);
-            this.processContents(lpRow, rowContents);
+            this.processContents(lpRow, queryIt);
         }
+        this.modCount++;
     }
 
     private void assertInitializeValid(List<Word<I>> prefixes, List<Word<I>> suffixes) {
@@ -126,6 +202,23 @@ public class OutputObservationTable<I, O> {
         }
     }
 
+    /**
+     * Answers the queries using the membership oracle, in batches of at most
+     * {@code maxBatchSize} queries
+     *
+     * @param queries The queries to be answered
+     */
+    private void processQueries(List<DefaultQuery<I, Word<O>>> queries) {
+        this.processQueries(queries, this.mqOracle);
+    }
+
+    private void processQueries(List<DefaultQuery<I, Word<O>>> queries, MembershipOracle<I, Word<O>> oracle) {
+        for (int start = 0; start < queries.size(); start += this.maxBatchSize) {
+            int end = (int) Math.min((long) start + this.maxBatchSize, queries.size());
+            oracle.processQueries(queries.subList(start, end));
+        }
+    }
+
     /**
      * Check the list of queries for previously unseen output symbols, and add them
      * to the output alphabet
@@ -155,62 +248,109 @@ public class OutputObservationTable<I, O> {
         if (!outputAlphabet.add(outputSymbol)) {
             return false;
         }
-        HashMap<List<Word<Boolean>>, List<Integer>> outputMap = new HashMap<>();
+        int outputIndex = this.outputAlphabet.getSymbolIndex(outputSymbol);
+        this.rows.addOutput();
+        for (OutputRow<I, O> row : this.allRows) {
+            int rowId = row.getRowId();
+            OutputSignature[] rowSignatures = Arrays.copyOf(this.signatures.get(rowId), outputIndex + 1);
+            rowSignatures[outputIndex] = this.project(rowId, outputIndex);
+            this.signatures.set(rowId, rowSignatures);
+        }
+        this.outputContentIds.add(new HashMap<>());
+        this.unclosedRows.add(new LinkedHashMap<>());
         for (OutputRow<I, O> spRow : this.shortPrefixRows) {
-            List<Word<O>> row = this.table.get(spRow.getRowId());
-            List<Word<Boolean>> outputRow = this.toOutputWords(row, outputSymbol);
-            List<Integer> outputIds = outputMap.getOrDefault(outputRow, new ArrayList<>());
-            outputIds.add(spRow.getRowId());
-            outputMap.put(outputRow, outputIds);
+            this.addContentId(outputIndex, this.getSignature(spRow, outputIndex), spRow.getRowId());
         }
-        this.outputContentIds.add(outputMap);
-        for (OutputRow<I, O> lpRow : this.longPrefixRows) {
-            lpRow.addShortRow(null);
+        for (OutputRow<I, O> row : this.allRows) {
+            // Rows that are still waiting for their cells are indexed once they have them
+            if (this.isComplete(row)) {
+                this.indexRow(row, outputIndex);
+            }
         }
         return true;
     }
 
     /**
-     * Add the rowContents to the table and
+     * Add the answers to the queries for every suffix to the table and
      * set the outputs of row for the transitions
      * If the row is short, add it to the outputContentIds map
+     * Afterwards, the row is added to the closedness index
      *
-     * @param row         The row for the contents
-     * @param rowContents The contents of the row
+     * @param row     The row for the contents
+     * @param queryIt Iterator over the answered queries, positioned at the query
+     *                for the first suffix of the row
      */
-    private void processContents(OutputRow<I, O> row, List<Word<O>> rowContents) {
-        table.set(row.getRowId(), new ArrayList<>(rowContents));
-        List<O> outputContents = rowContents.stream().limit(inputAlphabet.size()).map(Word::lastSymbol).toList();
-        row.setOutputs(outputContents);
+    private void processContents(OutputRow<I, O> row, Iterator<DefaultQuery<I, Word<O>>> queryIt) {
+        if (row.isShortPrefixRow()) {
+            this.removeContentIds(row);
+        }
+        for (int i = 0; i < suffixes.size(); i++) {
+            this.appendCell(row, queryIt.next().getOutput());
+        }
+        int rowId = row.getRowId();
+        for (int i = 0; i < inputAlphabet.size(); i++) {
+            this.rows.setOutput(rowId, i, this.table.getLastSymbol(rowId, i));
+        }
         if (row.isShortPrefixRow()) {
-            this.updateOutputContentIds(row, rowContents, 0);
+            this.addContentIds(row);
         }
+        this.indexRow(row);
     }
 
     /**
-     * Transforms a list of words words to a list of boolean words,
-     * where a character is set to true if it is equal to the specified output
+     * Appends the next cell to a row, and extends the projections of the row on
+     * every output with the new cell.
      *
-     * @param rowContents The row to be transformed
-     * @param output      The output to be compared to
-     * @return The transformed list of boolean words
+     * @param row  The row
+     * @param cell The output for the suffix of the cell
      */
-    private List<Word<Boolean>> toOutputWords(List<Word<O>> rowContents, O output) {
-        List<Word<Boolean>> outputRowContents = new ArrayList<>(rowContents.size());
-        for (Word<O> word : rowContents) {
-            WordBuilder<Boolean> wb = new WordBuilder<>();
-            for (O current : word) {
-                wb.add(current.equals(output));
+    private void appendCell(OutputRow<I, O> row, Word<O> cell) {
+        int rowId = row.getRowId();
+        this.table.appendCell(rowId, cell, this.outputAlphabet::getSymbolIndex);
+        int suffixIndex = this.table.getCellCount(rowId) - 1;
+        int start = this.table.getCellStart(suffixIndex);
+        int length = this.table.getCellLength(suffixIndex);
+        OutputSignature[] rowSignatures = this.signatures.get(rowId);
+        for (OutputSignature signature : rowSignatures) {
+            signature.extend(start + length);
+        }
+        for (int j = 0; j < length; j++) {
+            rowSignatures[this.table.getSymbol(rowId, suffixIndex, j)].set(start + j);
+        }
+    }
+
+    /**
+     * Projects the cells of a row on an output
+     *
+     * @param rowId       The id of the row to be projected
+     * @param outputIndex The index of the output to be compared to
+     * @return The signature of the row for the output
+     */
+    private OutputSignature project(int rowId, int outputIndex) {
+        OutputSignature signature = new OutputSignature();
+        int cellCount = this.table.getCellCount(rowId);
+        signature.extend(this.table.getCellStart(cellCount));
+        for (int k = 0; k < cellCount; k++) {
+            int start = this.table.getCellStart(k);
+            for (int j = 0; j < this.table.getCellLength(k); j++) {
+                if (this.table.getSymbol(rowId, k, j) == outputIndex) {
+                    signature.set(start + j);
+                }
             }
-            outputRowContents.add(wb.toWord());
         }
-        return outputRowContents;
+        return signature;
     }
 
-    private void fetchResults(Iterator<DefaultQuery<I, Word<O>>> queryIt, List<Word<O>> rowContents) {
-        for (int i = 0; i < suffixes.size(); i++) {
-            rowContents.add(queryIt.next().getOutput());
+    private OutputSignature getSignature(OutputRow<I, O> row, int outputIndex) {
+        return this.signatures.get(row.getRowId())[outputIndex];
+    }
+
+    private OutputSignature[] createSignatures() {
+        OutputSignature[] rowSignatures = new OutputSignature[this.outputAlphabet.size()];
+        for (int i = 0; i < rowSignatures.length; i++) {
+            rowSignatures[i] = new OutputSignature();
         }
+        return rowSignatures;
     }
 
     public Alphabet<I> getInputAlphabet() {
@@ -221,14 +361,47 @@ public class OutputObservationTable<I, O> {
         return outputAlphabet;
     }
 
+    /**
+     * @return The store holding the successors, short rows and outputs of the
+     *         rows, by row id
+     */
+    public OutputRowStore<I, O> getRowStore() {
+        return this.rows;
+    }
+
     public List<OutputRow<I, O>> getLongPrefixRows() {
         return Collections.unmodifiableList(this.longPrefixRows);
     }
 
+    /**
+     * @param row A row of the table
+     * @return The indices in the output alphabet of the output symbols of all
+     *         cells of the row, in the order of the suffixes
+     */
+    public int[] getCells(OutputRow<I, O> row) {
+        int rowId = row.getRowId();
+        int[] cells = new int[this.table.getCellStart(this.table.getCellCount(rowId))];
+        for (int k = 0; k < this.table.getCellCount(rowId); k++) {
+            int start = this.table.getCellStart(k);
+            for (int j = 0; j < this.table.getCellLength(k); j++) {
+                cells[start + j] = this.table.getSymbol(rowId, k, j);
+            }
+        }
+        return cells;
+    }
+
     public Word<I> getRow(int index) {
         return this.allRows.get(index).getLabel();
     }
 
+    /**
+     * @return A number that changes whenever the short prefix rows, their
+     *         successors or their outputs change
+     */
+    public int getModCount() {
+        return this.modCount;
+    }
+
     public List<OutputRow<I, O>> getShortPrefixRows() {
         return Collections.unmodifiableList(this.shortPrefixRows);
     }
@@ -238,22 +411,19 @@ public class OutputObservationTable<I, O> {
     }
 
     private OutputRow<I, O> createSpRow(Word<I> word) {
-        OutputRow<I, O> row = new OutputRow<>(word, allRows.size());
-        row.makeShort(this.inputAlphabet.size());
+        OutputRow<I, O> row = this.rows.addRow(word, this.table.addRow());
+        this.signatures.add(this.createSignatures());
+        row.makeShort();
         this.allRows.add(row);
         this.shortPrefixRows.add(row);
-        this.table.add(new ArrayList<>(suffixes.size()));
         return row;
     }
 
     private OutputRow<I, O> createLpRow(Word<I> lp) {
-        OutputRow<I, O> row = new OutputRow<>(lp, allRows.size());
-        for (int i = 0; i < suffixes.size(); i++) {
-            row.addShortRow(null);
-        }
+        OutputRow<I, O> row = this.rows.addRow(lp, this.table.addRow());
+        this.signatures.add(this.createSignatures());
         this.allRows.add(row);
         this.longPrefixRows.add(row);
-        this.table.add(new ArrayList<>(suffixes.size()));
         return row;
     }
 
@@ -275,7 +445,6 @@ public class OutputObservationTable<I, O> {
      * @return {@code true} if the list contained a new suffix
      */
     public boolean addSuffixes(List<Word<I>> suffixes) {
-        int suffixesCount = this.suffixes.size();
         List<Word<I>> suffixesToAdd = new ArrayList<>();
         for (Word<I> suffix : suffixes) {
             if (this.suffixSet.contains(suffix)) {
@@ -283,87 +452,185 @@ public class OutputObservationTable<I, O> {
             }
             this.suffixSet.add(suffix);
             this.suffixes.add(suffix);
+            this.table.addSuffix(suffix.length());
             suffixesToAdd.add(suffix);
         }
-        List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>();
-        for (int i = 0; i < allRows.size(); i++) {
-            OutputRow<I, O> row = allRows.get(i);
-            List<Word<O>> tableRow = table.get(i);
-            for (Word<I> suffix : suffixesToAdd) {
-                DefaultQuery<I, Word<O>> query = new DefaultQuery<>(row.getLabel(), suffix);
-                mqOracle.processQuery(query);
-                queries.add(query);
-                tableRow.add(query.getOutput());
+        if (suffixesToAdd.isEmpty()) {
+            return false;
+        }
+        List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>(allRows.size() * suffixesToAdd.size());
+        for (OutputRow<I, O> row : allRows) {
+            this.buildQueries(queries, row.getLabel(), suffixesToAdd);
+        }
+        this.processQueries(queries);
+        // The output alphabet has to contain all outputs before they can be stored
+        this.growOutputAlphabet(queries);
+        Iterator<DefaultQuery<I, Word<O>>> queryIt = queries.iterator();
+        for (OutputRow<I, O> row : allRows) {
+            if (row.isShortPrefixRow()) {
+                this.removeContentIds(row);
+            }
+            for (int i = 0; i < suffixesToAdd.size(); i++) {
+                this.appendCell(row, queryIt.next().getOutput());
             }
             if (row.isShortPrefixRow()) {
-                updateOutputContentIds(row, tableRow, suffixesCount);
+                this.addContentIds(row);
             }
         }
-        this.growOutputAlphabet(queries);
-        return this.suffixes.size() > suffixesCount;
+        // The contents of every row changed, so every row has to be indexed again
+        this.rebuildClosedness();
+        this.modCount++;
+        return true;
     }
 
     /**
-     * Update the {@code outputContentIds} with the new suffixes. After executing
-     * this
-     * function, {@code outputContentIds} will map {@code rowContents} to the same
-     * integer that {@code rowContents.subList(0, oldCount)} was mapped to.
+     * Removes a short prefix row from the content id maps. This should be done
+     * before cells are appended to the row, since that changes its contents.
      *
-     * @param rowContents The row contents after adding the suffixes
-     * @param oldCount    The old number of suffixes
-     * @implNote Assumes that the entries for the new suffixes were appended to the
-     *           end of the row contents, leaving the previous contents unmodified
-     *           (so the suffixes are sorted by when they are added, not
-     *           lexicographically)
+     * @param row The short prefix row
      */
-    private void updateOutputContentIds(OutputRow<I, O> row, List<Word<O>> rowContents, int oldCount) {
-        List<Word<O>> previousRowContents = rowContents.subList(0, oldCount);
-        this.rowContentIds.remove(previousRowContents);
-        this.rowContentIds.putIfAbsent(rowContents, row.getRowId());
-        for (int i = 0; i < this.outputAlphabet.size(); i++) {
-            O output = this.outputAlphabet.getSymbol(i);
-            List<Word<Boolean>> outputRow = this.toOutputWords(rowContents, output);
-            List<Word<Boolean>> previousRow = outputRow.subList(0, oldCount);
-            this.outputContentIds.get(i).get(previousRow).remove(Integer.valueOf(row.getRowId()));
-            if (this.outputContentIds.get(i).get(previousRow).isEmpty()) {
-                this.outputContentIds.get(i).remove(previousRow);
+    private void removeContentIds(OutputRow<I, O> row) {
+        int rowId = row.getRowId();
+        this.rowContentIds.remove(this.table.probe(rowId, this.table.getCellCount(rowId)));
+        for (int i = 0; i < this.outputContentIds.size(); i++) {
+            Map<OutputSignature, List<Integer>> outputMap = this.outputContentIds.get(i);
+            OutputSignature signature = this.getSignature(row, i);
+            List<Integer> outputIds = outputMap.get(signature);
+            if (outputIds == null) {
+                continue;
+            }
+            outputIds.remove(Integer.valueOf(rowId));
+            if (outputIds.isEmpty()) {
+                outputMap.remove(signature);
             }
-            List<Integer> outputIds = this.outputContentIds.get(i).getOrDefault(outputRow, new ArrayList<>());
-            outputIds.add(row.getRowId());
-            this.outputContentIds.get(i).put(outputRow, outputIds);
+        }
+    }
+
+    /**
+     * Adds a short prefix row to the content id maps, using its current contents.
+     *
+     * @param row The short prefix row
+     */
+    private void addContentIds(OutputRow<I, O> row) {
+        int rowId = row.getRowId();
+        PackedCellStore.RowKey key = this.table.key(rowId, this.table.getCellCount(rowId));
+        if (this.rowContentIds.putIfAbsent(key, rowId) == null) {
+            this.regularUnclosedRows.remove(key);
+        }
+        for (int i = 0; i < this.outputContentIds.size(); i++) {
+            this.addContentId(i, this.getSignature(row, i), rowId);
+        }
+    }
+
+    /**
+     * Adds a short prefix row to the content id map of an output. If the row is
+     * the first short prefix row with its contents, the rows that were unclosed
+     * with the same contents are now closed by it.
+     *
+     * @param outputIndex The index of the output
+     * @param signature   The contents of the row for the output
+     * @param rowId       The id of the short prefix row
+     */
+    private void addContentId(int outputIndex, OutputSignature signature, int rowId) {
+        Map<OutputSignature, List<Integer>> outputMap = this.outputContentIds.get(outputIndex);
+        List<Integer> outputIds = outputMap.get(signature);
+        if (outputIds == null) {
+            // The signature of the row changes when suffixes are added, so store a copy
+            outputIds = new ArrayList<>();
+            outputMap.put(signature.copy(), outputIds);
+            List<OutputRow<I, O>> closedRows = this.unclosedRows.get(outputIndex).remove(signature);
+            if (closedRows != null) {
+                OutputRow<I, O> shortRow = this.allRows.get(rowId);
+                for (OutputRow<I, O> row : closedRows) {
+                    row.setShortRow(outputIndex, shortRow);
+                }
+            }
+        }
+        outputIds.add(rowId);
+    }
+
+    private boolean isComplete(OutputRow<I, O> row) {
+        return this.table.getCellCount(row.getRowId()) == this.table.getSuffixCount();
+    }
+
+    /**
+     * Adds a row with all its cells to the closedness index. For every output for
+     * which the row is closed, its short row is set to the first short prefix row
+     * with the same contents.
+     *
+     * @param row The row
+     */
+    private void indexRow(OutputRow<I, O> row) {
+        int rowId = row.getRowId();
+        if (!this.rowContentIds.containsKey(this.table.probe(rowId, this.table.getCellCount(rowId)))) {
+            PackedCellStore.RowKey key = this.table.key(rowId, this.table.getCellCount(rowId));
+            this.regularUnclosedRows.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+        }
+        for (int i = 0; i < this.outputContentIds.size(); i++) {
+            this.indexRow(row, i);
+        }
+    }
+
+    private void indexRow(OutputRow<I, O> row, int outputIndex) {
+        OutputSignature signature = this.getSignature(row, outputIndex);
+        List<Integer> contentIds = this.outputContentIds.get(outputIndex).get(signature);
+        if (contentIds != null) {
+            row.setShortRow(outputIndex, this.allRows.get(contentIds.get(0)));
+            return;
+        }
+        Map<OutputSignature, List<OutputRow<I, O>>> outputUnclosed = this.unclosedRows.get(outputIndex);
+        List<OutputRow<I, O>> unclosedClass = outputUnclosed.get(signature);
+        if (unclosedClass == null) {
+            unclosedClass = new ArrayList<>();
+            outputUnclosed.put(signature.copy(), unclosedClass);
+        }
+        unclosedClass.add(row);
+    }
+
+    /**
+     * Indexes every row again, which is needed when the contents of all rows have
+     * changed.
+     */
+    private void rebuildClosedness() {
+        this.regularUnclosedRows.clear();
+        for (Map<OutputSignature, List<OutputRow<I, O>>> outputUnclosed : this.unclosedRows) {
+            outputUnclosed.clear();
+        }
+        this.shortRowsReassigned = false;
+        for (OutputRow<I, O> row : this.allRows) {
+            this.indexRow(row);
         }
     }
 
     /**
      * Moves a row from the long prefix rows to the short prefix rows.
      * As a result, its successors are created as long prefix rows.
+     * The queries for all successors are answered together.
      *
      * @param newShortRow The row to be made short
      */
     public void makeShort(OutputRow<I, O> newShortRow) {
         this.longPrefixRows.remove(newShortRow);
         this.shortPrefixRows.add(newShortRow);
-        newShortRow.makeShort(this.inputAlphabet.size());
-        List<Word<O>> rowContents = this.table.get(newShortRow.getRowId());
-        this.rowContentIds.putIfAbsent(rowContents, newShortRow.getRowId());
-        for (int i = 0; i < outputAlphabet.size(); i++) { // Update outputContentIds
-            List<Word<Boolean>> outputContents = this.toOutputWords(rowContents, this.outputAlphabet.getSymbol(i));
-            List<Integer> outputIds = this.outputContentIds.get(i).getOrDefault(outputContents, new ArrayList<>());
-            outputIds.add(newShortRow.getRowId());
-            this.outputContentIds.get(i).put(outputContents, outputIds);
-        }
+        newShortRow.makeShort();
+        this.addContentIds(newShortRow);
+        List<OutputRow<I, O>> lpRows = new ArrayList<>(inputAlphabet.size());
+        List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>(inputAlphabet.size() * suffixes.size());
         for (int i = 0; i < inputAlphabet.size(); i++) { // Create new long prefix rows
             I sym = inputAlphabet.getSymbol(i);
             Word<I> lp = newShortRow.getLabel().append(sym);
             OutputRow<I, O> lpRow = createLpRow(lp);
             newShortRow.setSuccessor(i, lpRow);
-            List<DefaultQuery<I, Word<O>>> queries = new ArrayList<>(suffixes.size());
+            lpRows.add(lpRow);
             this.buildQueries(queries, lp, suffixes);
-            mqOracle.processQueries(queries);
-            this.growOutputAlphabet(queries);
-            List<Word<O>> lpRowContents = queries.stream().map(DefaultQuery::getOutput).toList();
-            this.processContents(lpRow, lpRowContents);
         }
+        this.processQueries(queries);
+        this.growOutputAlphabet(queries);
+        Iterator<DefaultQuery<I, Word<O>>> queryIt = queries.iterator();
+        for (OutputRow<I, O> lpRow : lpRows) {
+            this.processContents(lpRow, queryIt);
+        }
+        this.modCount++;
     }
 
     /**
@@ -373,18 +640,25 @@ public class OutputObservationTable<I, O> {
      * @return True if and only if the table is closed
      */
     public boolean isRegularClosed() {
+        if (!this.regularUnclosedRows.isEmpty()) {
+            return false;
+        }
+        boolean changed = false;
         for (OutputRow<I, O> row : this.allRows) {
-            List<Word<O>> rowContents = this.table.get(row.getRowId());
-            Integer contentId = this.rowContentIds.get(rowContents);
-            if (contentId == null) {
-                return false;
-            }
+            int rowId = row.getRowId();
+            Integer contentId = this.rowContentIds.get(this.table.probe(rowId, this.table.getCellCount(rowId)));
             OutputRow<I, O> shortRow = this.allRows.get(contentId);
             for (int i = 0; i < this.outputAlphabet.size(); i++) {
-                row.setShortRow(i, shortRow);
+                if (row.getShortRow(i) != shortRow) {
+                    row.setShortRow(i, shortRow);
+                    changed = true;
+                }
             }
         }
-        System.out.println("Regular closed");
+        this.shortRowsReassigned = true;
+        if (changed) {
+            this.modCount++;
+        }
         return true;
     }
 
@@ -411,27 +685,34 @@ public class OutputObservationTable<I, O> {
      *
      * @return A list of equivalence classes of unclosed rows, or an empty list if
      *         there are no unclosed rows
+     * @implNote The unclosed rows are not computed here, but maintained by the
+     *           table: adding a row or a short prefix row only updates the rows
+     *           involved, and the index is only rebuilt when suffixes are added.
+     *           The classes of an output are ordered by their first row.
      */
     public List<List<OutputRow<I, O>>> findUnclosedRows() {
-        List<Map<List<Word<Boolean>>, Integer>> unclosedIndexes = new ArrayList<>(this.outputAlphabet.size());
-        List<List<OutputRow<I, O>>> unclosed = new ArrayList<>();
-        for (int i = 0; i < this.outputAlphabet.size(); i++) {
-            unclosedIndexes.add(new HashMap<>());
+        if (this.shortRowsReassigned) { // Undo the choices made by isRegularClosed
+            boolean changed = false;
             for (OutputRow<I, O> row : this.allRows) {
-                List<Word<O>> rowContents = this.table.get(row.getRowId());
-                List<Word<Boolean>> outputContents = this.toOutputWords(rowContents, this.outputAlphabet.getSymbol(i));
-                List<Integer> contentIds = this.outputContentIds.get(i).get(outputContents);
-                if (contentIds == null) { // The row is unclosed for this output
-                    Integer unclosedIndex = unclosedIndexes.get(i).get(outputContents);
-                    if (unclosedIndex == null) { // There is no equivalence class for this row, so add one
-                        unclosedIndex = unclosed.size();
-                        unclosed.add(new ArrayList<>());
+                for (int i = 0; i < this.outputContentIds.size(); i++) {
+                    List<Integer> contentIds = this.outputContentIds.get(i).get(this.getSignature(row, i));
+                    OutputRow<I, O> shortRow = contentIds == null ? null : this.allRows.get(contentIds.get(0));
+                    if (shortRow != null && row.getShortRow(i) != shortRow) {
+                        row.setShortRow(i, shortRow);
+                        changed = true;
                     }
-                    unclosed.get(unclosedIndex).add(row);
-                } else { // The row is closed for this output
-                    row.setShortRow(i, this.allRows.get(contentIds.get(0)));
                 }
             }
+            this.shortRowsReassigned = false;
+            if (changed) {
+                this.modCount++;
+            }
+        }
+        List<List<OutputRow<I, O>>> unclosed = new ArrayList<>();
+        for (Map<OutputSignature, List<OutputRow<I, O>>> outputUnclosed : this.unclosedRows) {
+            for (List<OutputRow<I, O>> unclosedClass : outputUnclosed.values()) {
+                unclosed.add(new ArrayList<>(unclosedClass));
+            }
         }
         return unclosed;
     }
@@ -444,28 +725,23 @@ public class OutputObservationTable<I, O> {
      */
     public Word<I> findInconsistentRows() {
         for (int i = 0; i < this.outputAlphabet.size(); i++) {
-            Map<List<Word<Boolean>>, List<Integer>> currentOutputContentIds = this.outputContentIds.get(i);
+            Map<OutputSignature, List<Integer>> currentOutputContentIds = this.outputContentIds.get(i);
             for (List<Integer> currentList : currentOutputContentIds.values()) {
                 if (currentList.size() <= 1) {
                     continue;
                 }
                 for (int a = 0; a < this.inputAlphabet.size(); a++) {
-                    List<List<Word<Boolean>>> successors = new ArrayList<>();
-                    for (Integer current : currentList) { // Build successor rows
-                        OutputRow<I, O> currentRow = this.allRows.get(current);
-                        OutputRow<I, O> sucRow = currentRow.getSuccessor(a);
-                        List<Word<O>> sucOutputs = this.table.get(sucRow.getRowId());
-                        successors.add(this.toOutputWords(sucOutputs, this.outputAlphabet.getSymbol(i)));
-                    }
-                    List<Word<Boolean>> first = successors.get(0);
-                    for (int j = 1; j < successors.size(); j++) { // Check they are all equal
-                        List<Word<Boolean>> other = successors.get(j);
-                        for (int k = 0; k < first.size(); k++) {
-                            if (!first.get(k).equals(other.get(k))) { // Inconsistency found
-                                I infix = this.inputAlphabet.getSymbol(a);
-                                Word<I> suffix = this.suffixes.get(k);
-                                return Word.fromLetter(infix).concat(suffix);
-                            }
+                    OutputRow<I, O> firstRow = this.allRows.get(currentList.get(0)).getSuccessor(a);
+                    OutputSignature first = this.getSignature(firstRow, i);
+                    for (int j = 1; j < currentList.size(); j++) { // Check they are all equal
+                        OutputRow<I, O> otherRow = this.allRows.get(currentList.get(j)).getSuccessor(a);
+                        OutputSignature other = this.getSignature(otherRow, i);
+                        int position = first.nextDifference(other, 0);
+                        if (position != -1) { // Inconsistency found
+                            int k = this.table.getSuffixIndex(position);
+                            I infix = this.inputAlphabet.getSymbol(a);
+                            Word<I> suffix = this.suffixes.get(k);
+                            return Word.fromLetter(infix).concat(suffix);
                         }
                     }
                 }
@@ -477,36 +753,53 @@ public class OutputObservationTable<I, O> {
     /**
      * Finds all rows that are inconsistent when projected to some output
      * Two rows are inconsistent if they are equal, but their successor rows aren't
+     * <p>
+     * Within a class of equal short prefix rows, the successor rows for an input
+     * are grouped by their contents, so that the first row of the class is
+     * compared to every different successor only once. A word is counted once
+     * for every row it would make consistent with the first row of its class.
      *
-     * @return All words that would fix an inconsistency, or null if none exist
+     * @return All words that would fix an inconsistency, with the number of times
+     *         they were found, in the order in which they were first found, or an
+     *         empty multiset if none exist
      */
-    public List<Word<I>> findAllInconsistentRows() {
-        ArrayList<Word<I>> result = new ArrayList<>();
+    public Multiset<Word<I>> findAllInconsistentRows() {
+        Multiset<Word<I>> result = LinkedHashMultiset.create();
+        Map<OutputSignature, Integer> successorCounts = new LinkedHashMap<>();
         for (int i = 0; i < this.outputAlphabet.size(); i++) {
-            Map<List<Word<Boolean>>, List<Integer>> currentOutputContentIds = this.outputContentIds.get(i);
+            Map<OutputSignature, List<Integer>> currentOutputContentIds = this.outputContentIds.get(i);
             for (List<Integer> currentList : currentOutputContentIds.values()) {
                 if (currentList.size() <= 1) {
                     continue;
                 }
                 for (int a = 0; a < this.inputAlphabet.size(); a++) {
-                    List<List<Word<Boolean>>> successors = new ArrayList<>();
-                    for (Integer current : currentList) { // Build successor rows
-                        OutputRow<I, O> currentRow = this.allRows.get(current);
-                        OutputRow<I, O> sucRow = currentRow.getSuccessor(a);
-                        List<Word<O>> sucOutputs = this.table.get(sucRow.getRowId());
-                        successors.add(this.toOutputWords(sucOutputs, this.outputAlphabet.getSymbol(i)));
+                    OutputRow<I, O> firstRow = this.allRows.get(currentList.get(0)).getSuccessor(a);
+                    OutputSignature first = this.getSignature(firstRow, i);
+                    for (int j = 1; j < currentList.size(); j++) {
+                        OutputRow<I, O> otherRow = this.allRows.get(currentList.get(j)).getSuccessor(a);
+                        if (otherRow == firstRow) {
+                            continue;
+                        }
+                        OutputSignature other = this.getSignature(otherRow, i);
+                        if (first.nextDifference(other, 0) != -1) {
+                            successorCounts.merge(other, 1, Integer::sum);
+                        }
+                    }
+                    if (successorCounts.isEmpty()) {
+                        continue;
                     }
-                    List<Word<Boolean>> first = successors.get(0);
-                    for (int j = 1; j < successors.size(); j++) { // Check they are all equal
-                        List<Word<Boolean>> other = successors.get(j);
-                        for (int k = 0; k < first.size(); k++) {
-                            if (!first.get(k).equals(other.get(k))) { // Inconsistency found
-                                I infix = this.inputAlphabet.getSymbol(a);
-                                Word<I> suffix = this.suffixes.get(k);
-                                result.add(Word.fromLetter(infix).concat(suffix));
-                            }
+                    for (Map.Entry<OutputSignature, Integer> entry : successorCounts.entrySet()) {
+                        OutputSignature other = entry.getKey();
+                        int position = first.nextDifference(other, 0);
+                        while (position != -1) { // Inconsistency found
+                            int k = this.table.getSuffixIndex(position);
+                            I infix = this.inputAlphabet.getSymbol(a);
+                            Word<I> suffix = this.suffixes.get(k);
+                            result.add(Word.fromLetter(infix).concat(suffix), entry.getValue());
+                            position = first.nextDifference(other, this.table.getCellStart(k + 1));
                         }
                     }
+                    successorCounts.clear();
                 }
             }
         }
@@ -1,39 +1,28 @@
 package com.example;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
-import com.google.common.collect.Lists;
-
 import net.automatalib.word.Word;
 
 /**
  * The rows in the observation table used by OL*.
  * They record their own successor rows and outputs,
  * so they can be used effectively as the states in a Mealy machine.
+ * <p>
+ * A row is a view on an {@link OutputRowStore}, which holds the successors,
+ * short rows and outputs of all rows as ids in flat arrays. The methods on ids
+ * avoid looking up the views, which makes them cheaper in loops over many rows.
  */
 public class OutputRow<I, O> {
 
+    private final OutputRowStore<I, O> store;
     private final Word<I> label;
     private final int rowId;
-    /**
-     * A list of successor rows for every input.
-     * Only short prefix rows have this set. For long prefix rows, it is null.
-     */
-    private ArrayList<OutputRow<I, O>> successors;
-    /**
-     * For every output symbol, the short row this row is equal to.
-     */
-    private ArrayList<OutputRow<I, O>> shortRows;
-    /** For every input, the output from this row */
-    private List<O> outputs;
 
-    public OutputRow(Word<I> label, int rowId) {
+    OutputRow(OutputRowStore<I, O> store, Word<I> label, int rowId) {
+        this.store = store;
         this.label = label;
         this.rowId = rowId;
-        this.successors = null;
-        this.shortRows = new ArrayList<>();
     }
 
     public Word<I> getLabel() {
@@ -45,7 +34,16 @@ public class OutputRow<I, O> {
     }
 
     public OutputRow<I, O> getSuccessor(int inputIndex) {
-        return this.successors.get(inputIndex);
+        int successorId = this.store.getSuccessor(this.rowId, inputIndex);
+        return successorId < 0 ? null : this.store.getRow(successorId);
+    }
+
+    /**
+     * @param inputIndex The index of the input symbol in the input alphabet
+     * @return The id of the successor row, or -1 if there is none
+     */
+    public int getSuccessorId(int inputIndex) {
+        return this.store.getSuccessor(this.rowId, inputIndex);
     }
 
     /**
@@ -54,62 +52,54 @@ public class OutputRow<I, O> {
      * @return {@code true} if and only if this output row is a short prefix row
      */
     public boolean setSuccessor(int inputIndex, OutputRow<I, O> suc) {
-        if (this.successors == null) {
+        if (!this.isShortPrefixRow()) {
             return false;
         }
-        this.successors.set(inputIndex, suc);
+        this.store.setSuccessor(this.rowId, inputIndex, suc.getRowId());
         return true;
     }
 
     public boolean isShortPrefixRow() {
-        return this.successors != null;
+        return this.store.isShortPrefixRow(this.rowId);
     }
 
     public boolean setShortRow(int outputIndex, OutputRow<I, O> row) {
-        while (this.shortRows.size() < outputIndex) {
-            this.shortRows.add(null);
-        }
-        if (this.shortRows.size() == outputIndex) {
-            this.shortRows.add(row);
-        } else {
-            this.shortRows.set(outputIndex, row);
-        }
-        return true;
-    }
-
-    public boolean addShortRow(OutputRow<I, O> row) {
-        this.shortRows.add(row);
+        this.store.setShortRow(this.rowId, outputIndex, row == null ? -1 : row.getRowId());
         return true;
     }
 
     public OutputRow<I, O> getShortRow(int outputIndex) {
-        return this.shortRows.get(outputIndex);
+        int shortRowId = this.store.getShortRow(this.rowId, outputIndex);
+        return shortRowId < 0 ? null : this.store.getRow(shortRowId);
     }
 
-    public List<OutputRow<I, O>> getShortRows() {
-        return Collections.unmodifiableList(this.shortRows);
+    /**
+     * @param outputIndex The index of the output in the output alphabet
+     * @return The id of the short row this row is equal to for the output, or -1
+     *         if there is none
+     */
+    public int getShortRowId(int outputIndex) {
+        return this.store.getShortRow(this.rowId, outputIndex);
     }
 
-    public void makeShort(int inputAlphabetSize) {
-        if (this.isShortPrefixRow()) {
-            return;
-        }
-        this.successors = Lists.newArrayListWithCapacity(inputAlphabetSize);
-        for (int i = 0; i < inputAlphabetSize; i++) {
-            this.successors.add(null);
-        }
+    public List<OutputRow<I, O>> getShortRows() {
+        return this.store.getShortRows(this.rowId);
     }
 
-    public void setOutputs(List<O> outputContents) {
-        this.outputs = outputContents;
+    public void makeShort() {
+        this.store.makeShort(this.rowId);
     }
 
-    public List<O> getOutputs() {
-        return Collections.unmodifiableList(this.outputs);
+    public O getOutput(int index) {
+        return this.store.getOutputSymbol(this.store.getOutput(this.rowId, index));
     }
 
-    public O getOutput(int index) {
-        return this.outputs.get(index);
+    /**
+     * @param index The index of the input symbol in the input alphabet
+     * @return The index in the output alphabet of the output for the input
+     */
+    public int getOutputIndex(int index) {
+        return this.store.getOutput(this.rowId, index);
     }
 
     @Override
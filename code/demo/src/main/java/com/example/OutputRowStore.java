@@ -0,0 +1,174 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.word.Word;
+
+/**
+ * Storage for the links between the rows of the {@link OutputObservationTable}.
+ * <p>
+ * Rows are identified by their row id, and every link is stored as the id of
+ * the row it points to, in a flat {@code int[]} per kind of link: the successor
+ * rows of the short prefix rows for every input, the short row of every row for
+ * every output, and the output of every row for every input, interned as its
+ * index in the output alphabet. Missing links are stored as -1. The
+ * {@link OutputRow}s only hold their label and id, and read their links from
+ * here.
+ * <p>
+ * The short rows of a row are stored at a stride that is at least the number of
+ * outputs. When an output is added and the stride is too small, the short rows
+ * are copied to a larger stride, so adding outputs takes amortized constant
+ * time per row.
+ */
+public class OutputRowStore<I, O> {
+
+    private static final int NONE = -1;
+
+    private final int inputCount;
+    private final Alphabet<O> outputAlphabet;
+    /** The views on the rows, indexed by their id */
+    private final List<OutputRow<I, O>> rows = new ArrayList<>();
+
+    private int[] successors;
+    private int[] outputs;
+    private int[] shortRows;
+    private boolean[] shortPrefix;
+    private int outputCount = 0;
+    private int outputStride = 4;
+
+    /**
+     * @param inputCount     The size of the input alphabet
+     * @param outputAlphabet The output alphabet, in which outputs are interned
+     */
+    public OutputRowStore(int inputCount, Alphabet<O> outputAlphabet) {
+        this.inputCount = inputCount;
+        this.outputAlphabet = outputAlphabet;
+        this.successors = new int[16 * inputCount];
+        this.outputs = new int[16 * inputCount];
+        this.shortRows = new int[16 * this.outputStride];
+        this.shortPrefix = new boolean[16];
+        Arrays.fill(this.successors, NONE);
+        Arrays.fill(this.outputs, NONE);
+        Arrays.fill(this.shortRows, NONE);
+    }
+
+    /**
+     * Adds a long prefix row without links
+     *
+     * @param label The label of the row
+     * @param rowId The id of the row, which should be the number of rows so far
+     * @return The view on the new row
+     */
+    public OutputRow<I, O> addRow(Word<I> label, int rowId) {
+        if (rowId != this.rows.size()) {
+            throw new IllegalArgumentException("Expected row id " + this.rows.size() + ", but was " + rowId);
+        }
+        if (rowId == this.shortPrefix.length) {
+            int capacity = rowId * 2;
+            this.successors = grow(this.successors, capacity * this.inputCount);
+            this.outputs = grow(this.outputs, capacity * this.inputCount);
+            this.shortRows = grow(this.shortRows, capacity * this.outputStride);
+            this.shortPrefix = Arrays.copyOf(this.shortPrefix, capacity);
+        }
+        OutputRow<I, O> row = new OutputRow<>(this, label, rowId);
+        this.rows.add(row);
+        return row;
+    }
+
+    /**
+     * Adds a column for a new output to the short rows, in which every row has no
+     * short row yet
+     */
+    public void addOutput() {
+        if (this.outputCount == this.outputStride) {
+            int stride = this.outputStride * 2;
+            int[] restrided = new int[this.shortPrefix.length * stride];
+            Arrays.fill(restrided, NONE);
+            for (int r = 0; r < this.rows.size(); r++) {
+                System.arraycopy(this.shortRows, r * this.outputStride, restrided, r * stride, this.outputCount);
+            }
+            this.shortRows = restrided;
+            this.outputStride = stride;
+        }
+        this.outputCount++;
+    }
+
+    private static int[] grow(int[] array, int length) {
+        int oldLength = array.length;
+        int[] grown = Arrays.copyOf(array, length);
+        Arrays.fill(grown, oldLength, length, NONE);
+        return grown;
+    }
+
+    public OutputRow<I, O> getRow(int rowId) {
+        return this.rows.get(rowId);
+    }
+
+    public boolean isShortPrefixRow(int rowId) {
+        return this.shortPrefix[rowId];
+    }
+
+    public void makeShort(int rowId) {
+        this.shortPrefix[rowId] = true;
+    }
+
+    /**
+     * @return The id of the successor row, or -1 if the row is not a short prefix
+     *         row or its successor has not been set
+     */
+    public int getSuccessor(int rowId, int inputIndex) {
+        return this.successors[rowId * this.inputCount + inputIndex];
+    }
+
+    public void setSuccessor(int rowId, int inputIndex, int successorId) {
+        this.successors[rowId * this.inputCount + inputIndex] = successorId;
+    }
+
+    /**
+     * @return The id of the short row the row is equal to for the output, or -1
+     *         if there is none
+     */
+    public int getShortRow(int rowId, int outputIndex) {
+        return this.shortRows[rowId * this.outputStride + outputIndex];
+    }
+
+    public void setShortRow(int rowId, int outputIndex, int shortRowId) {
+        this.shortRows[rowId * this.outputStride + outputIndex] = shortRowId;
+    }
+
+    /**
+     * @return The index in the output alphabet of the output of the row for the
+     *         input, or -1 if the cells of the row have not been filled in
+     */
+    public int getOutput(int rowId, int inputIndex) {
+        return this.outputs[rowId * this.inputCount + inputIndex];
+    }
+
+    public void setOutput(int rowId, int inputIndex, int outputIndex) {
+        this.outputs[rowId * this.inputCount + inputIndex] = outputIndex;
+    }
+
+    public int getOutputCount() {
+        return this.outputCount;
+    }
+
+    O getOutputSymbol(int outputIndex) {
+        return this.outputAlphabet.getSymbol(outputIndex);
+    }
+
+    /**
+     * @return The short rows of a row, in the order of the output alphabet
+     */
+    List<OutputRow<I, O>> getShortRows(int rowId) {
+        List<OutputRow<I, O>> result = new ArrayList<>(this.outputCount);
+        for (int i = 0; i < this.outputCount; i++) {
+            int shortRowId = this.getShortRow(rowId, i);
+            result.add(shortRowId == NONE ? null : this.rows.get(shortRowId));
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
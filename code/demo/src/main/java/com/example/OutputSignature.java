@@ -0,0 +1,146 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * The contents of a row in the {@link OutputObservationTable}, projected on a
+ * single output. Every position in the cells of the row corresponds to one bit,
+ * which is set if and only if the output at that position is the projected
+ * output.
+ * <p>
+ * Signatures are updated in place when cells are appended to their row, so a
+ * signature that is used as a key in a hash map must not be modified. Use
+ * {@link #copy()} to create a key that can be stored.
+ */
+public final class OutputSignature {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] words = EMPTY;
+    private int length = 0;
+    private long hash;
+    private boolean hashValid = false;
+
+    /**
+     * @return The number of bits in this signature
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Extends the signature with unset bits.
+     *
+     * @param newLength The new number of bits, at least the current length
+     */
+    public void extend(int newLength) {
+        int wordCount = (newLength + 63) >>> 6;
+        if (wordCount > this.words.length) {
+            this.words = Arrays.copyOf(this.words, Math.max(wordCount, this.words.length * 2));
+        }
+        this.length = newLength;
+        this.hashValid = false;
+    }
+
+    /**
+     * Sets the bit at the given position.
+     *
+     * @param position The position, which should be smaller than the length
+     */
+    public void set(int position) {
+        this.words[position >>> 6] |= 1L << position;
+        this.hashValid = false;
+    }
+
+    public boolean get(int position) {
+        return (this.words[position >>> 6] & (1L << position)) != 0;
+    }
+
+    /**
+     * Finds the first position at or after {@code from} at which this signature
+     * and {@code other} differ. Both signatures should have the same length.
+     *
+     * @param other The signature to compare to
+     * @param from  The position to start searching at
+     * @return The position of the difference, or -1 if there is none
+     */
+    public int nextDifference(OutputSignature other, int from) {
+        int wordCount = (this.length + 63) >>> 6;
+        int w = from >>> 6;
+        if (w >= wordCount) {
+            return -1;
+        }
+        long diff = (this.words[w] ^ other.words[w]) & (-1L << from);
+        while (true) {
+            if (diff != 0) {
+                int position = (w << 6) + Long.numberOfTrailingZeros(diff);
+                return position < this.length ? position : -1;
+            }
+            if (++w == wordCount) {
+                return -1;
+            }
+            diff = this.words[w] ^ other.words[w];
+        }
+    }
+
+    /**
+     * @return A copy of this signature, which is not affected by changes to this
+     *         signature
+     */
+    public OutputSignature copy() {
+        OutputSignature result = new OutputSignature();
+        result.words = Arrays.copyOf(this.words, (this.length + 63) >>> 6);
+        result.length = this.length;
+        result.hash = this.hash;
+        result.hashValid = this.hashValid;
+        return result;
+    }
+
+    /**
+     * @return A 64-bit hash of the signature, cached until the signature changes
+     */
+    public long hash64() {
+        if (!this.hashValid) {
+            long h = this.length * 0x9E3779B97F4A7C15L;
+            int wordCount = (this.length + 63) >>> 6;
+            for (int i = 0; i < wordCount; i++) {
+                h = (h ^ this.words[i]) * 0xBF58476D1CE4E5B9L;
+                h ^= h >>> 31;
+            }
+            this.hash = h;
+            this.hashValid = true;
+        }
+        return this.hash;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = this.hash64();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof OutputSignature)) {
+            return false;
+        }
+        OutputSignature other = (OutputSignature) obj;
+        if (this.length != other.length || this.hash64() != other.hash64()) {
+            return false;
+        }
+        int wordCount = (this.length + 63) >>> 6;
+        return Arrays.equals(this.words, 0, wordCount, other.words, 0, wordCount);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(this.length);
+        for (int i = 0; i < this.length; i++) {
+            sb.append(this.get(i) ? '1' : '0');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,218 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+import net.automatalib.word.Word;
+
+/**
+ * Storage for the cells of the {@link OutputObservationTable}.
+ * <p>
+ * Output symbols are interned to small integers (their index in the output
+ * alphabet), and all cells of a row are stored back to back in a single
+ * {@code int[]}. Every row has a cell for every suffix, and a cell is exactly as
+ * long as its suffix, so the offset of a cell within a row only depends on the
+ * suffix. These offsets are therefore shared by all rows.
+ * <p>
+ * Only the part of the answer that belongs to the suffix is stored, the outputs
+ * for the prefix of a row are never needed by OL*.
+ */
+public class PackedCellStore {
+
+    private static final int[] EMPTY_ROW = new int[0];
+
+    /** For every row id, the interned outputs of all cells of that row */
+    private int[][] rows = new int[16][];
+    /** For every row id, the number of cells that have been filled in */
+    private int[] cellCounts = new int[16];
+    private int rowCount = 0;
+
+    /**
+     * {@code offsets[k]} is the start of the cell for suffix {@code k} within a
+     * row, {@code offsets[suffixCount]} is the length of a complete row
+     */
+    private int[] offsets = new int[16];
+    private int suffixCount = 0;
+
+    /**
+     * Adds a new, empty row.
+     *
+     * @return The id of the new row
+     */
+    public int addRow() {
+        if (this.rowCount == this.rows.length) {
+            this.rows = Arrays.copyOf(this.rows, this.rowCount * 2);
+            this.cellCounts = Arrays.copyOf(this.cellCounts, this.rowCount * 2);
+        }
+        this.rows[this.rowCount] = EMPTY_ROW;
+        return this.rowCount++;
+    }
+
+    /**
+     * Adds a column for a suffix of the given length. The cells for the new
+     * suffix still have to be filled in for every row using
+     * {@link #appendCell(int, Word, ToIntFunction)}.
+     *
+     * @param length The length of the suffix
+     */
+    public void addSuffix(int length) {
+        if (this.suffixCount + 1 == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+        this.offsets[this.suffixCount + 1] = this.offsets[this.suffixCount] + length;
+        this.suffixCount++;
+    }
+
+    /**
+     * Appends the next cell to a row.
+     *
+     * @param rowId  The id of the row
+     * @param cell   The output for the suffix of the cell
+     * @param intern Maps output symbols to their ids
+     */
+    public <O> void appendCell(int rowId, Word<O> cell, ToIntFunction<? super O> intern) {
+        int suffixIndex = this.cellCounts[rowId];
+        if (suffixIndex >= this.suffixCount) {
+            throw new IllegalStateException("Row " + rowId + " already has a cell for every suffix");
+        }
+        int start = this.offsets[suffixIndex];
+        if (cell.length() != this.offsets[suffixIndex + 1] - start) {
+            throw new IllegalArgumentException("Cell length does not match the length of suffix " + suffixIndex);
+        }
+        int[] row = this.rows[rowId];
+        if (row.length < this.offsets[suffixIndex + 1]) {
+            // All suffixes are registered before their cells are filled in,
+            // so the row only has to grow once to its complete length
+            row = Arrays.copyOf(row, this.offsets[this.suffixCount]);
+            this.rows[rowId] = row;
+        }
+        for (int i = 0; i < cell.length(); i++) {
+            row[start + i] = intern.applyAsInt(cell.getSymbol(i));
+        }
+        this.cellCounts[rowId] = suffixIndex + 1;
+    }
+
+    public int getRowCount() {
+        return this.rowCount;
+    }
+
+    public int getSuffixCount() {
+        return this.suffixCount;
+    }
+
+    /**
+     * @param rowId The id of the row
+     * @return The number of cells of the row that have been filled in
+     */
+    public int getCellCount(int rowId) {
+        return this.cellCounts[rowId];
+    }
+
+    public int getCellStart(int suffixIndex) {
+        return this.offsets[suffixIndex];
+    }
+
+    /**
+     * @param position A position within a row
+     * @return The index of the suffix whose cell contains the position
+     */
+    public int getSuffixIndex(int position) {
+        int low = 0;
+        int high = this.suffixCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (this.offsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public int getCellLength(int suffixIndex) {
+        return this.offsets[suffixIndex + 1] - this.offsets[suffixIndex];
+    }
+
+    /**
+     * @param rowId       The id of the row
+     * @param suffixIndex The index of the suffix
+     * @param position    The position within the suffix
+     * @return The id of the output symbol at that position
+     */
+    public int getSymbol(int rowId, int suffixIndex, int position) {
+        return this.rows[rowId][this.offsets[suffixIndex] + position];
+    }
+
+    /**
+     * @param rowId       The id of the row
+     * @param suffixIndex The index of the suffix
+     * @return The id of the last output symbol of the cell
+     */
+    public int getLastSymbol(int rowId, int suffixIndex) {
+        return this.rows[rowId][this.offsets[suffixIndex + 1] - 1];
+    }
+
+    /**
+     * Creates a key for the first {@code cellCount} cells of a row, which stays
+     * valid after cells are appended to the row.
+     *
+     * @param rowId     The id of the row
+     * @param cellCount The number of cells to include
+     * @return The key
+     */
+    public RowKey key(int rowId, int cellCount) {
+        int length = this.offsets[cellCount];
+        return new RowKey(Arrays.copyOf(this.rows[rowId], length), length);
+    }
+
+    /**
+     * Creates a key for the first {@code cellCount} cells of a row without
+     * copying the row. The key can be used for lookups, but should not be stored
+     * since it shares its contents with the row.
+     *
+     * @param rowId     The id of the row
+     * @param cellCount The number of cells to include
+     * @return The key
+     */
+    public RowKey probe(int rowId, int cellCount) {
+        return new RowKey(this.rows[rowId], this.offsets[cellCount]);
+    }
+
+    /**
+     * The contents of (the first cells of) a row, usable as key in hash maps.
+     */
+    public static final class RowKey {
+        private final int[] data;
+        private final int length;
+        private final int hash;
+
+        private RowKey(int[] data, int length) {
+            this.data = data;
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + data[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RowKey)) {
+                return false;
+            }
+            RowKey other = (RowKey) obj;
+            return this.hash == other.hash
+                    && Arrays.equals(this.data, 0, this.length, other.data, 0, other.length);
+        }
+    }
+}
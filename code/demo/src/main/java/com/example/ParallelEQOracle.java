@@ -0,0 +1,189 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import de.learnlib.oracle.EquivalenceOracle.MealyEquivalenceOracle;
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.DefaultQuery;
+import net.automatalib.automaton.transducer.MealyMachine;
+import net.automatalib.word.Word;
+
+/**
+ * Equivalence oracle which asks batches of test words using several workers at
+ * the same time. Every worker is an oracle of its own, for example for one
+ * instance of the system under learning, and is only used by one thread at a
+ * time.
+ * <p>
+ * There is at most one batch per worker in progress. As soon as a batch shows
+ * a counterexample, no new batches are started, and the batches that are
+ * waiting for a worker are skipped. Batches that are being asked are not
+ * interrupted, because a worker may be in the middle of talking to the system
+ * or writing a cache; they finish in the background and are ignored. Of the
+ * counterexamples in the batches that were finished by then, the shortest is
+ * returned.
+ * <p>
+ * The hypothesis is simulated by several threads at the same time, so it
+ * should be safe to read from several threads.
+ */
+public class ParallelEQOracle<I, O> implements MealyEquivalenceOracle<I, O>, AutoCloseable {
+
+    /** Number of test words that is worth sending to another thread */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Generates the test words for a hypothesis while they are iterated, for
+     * example {@link ComponentWpEQOracle#generateTestWords}
+     */
+    @FunctionalInterface
+    public interface TestWordGenerator<I, O> {
+        Iterator<Word<I>> generateTestWords(MealyMachine<?, I, ?, O> hypothesis, Collection<? extends I> inputs);
+    }
+
+    private final int workerCount;
+    private final BlockingQueue<MembershipOracle<I, Word<O>>> idleWorkers;
+    private final ExecutorService executor;
+    private final TestWordGenerator<I, O> generator;
+    private final int batchSize;
+
+    /**
+     * @param workers   The oracles asking the test words, each of which is used by
+     *                  one thread at a time
+     * @param executor  The executor running the workers, which is shut down by
+     *                  {@link #close()}
+     * @param generator The generator of the test words
+     * @param batchSize The number of test words given to a worker at once
+     */
+    public ParallelEQOracle(Collection<? extends MembershipOracle<I, Word<O>>> workers, ExecutorService executor,
+            TestWordGenerator<I, O> generator, int batchSize) {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size should be positive, but was " + batchSize);
+        }
+        this.workerCount = workers.size();
+        this.idleWorkers = new ArrayBlockingQueue<>(this.workerCount, false, workers);
+        this.executor = executor;
+        this.generator = generator;
+        this.batchSize = batchSize;
+    }
+
+    public ParallelEQOracle(Collection<? extends MembershipOracle<I, Word<O>>> workers,
+            TestWordGenerator<I, O> generator) {
+        this(workers, ParallelMembershipOracle.platformThreads(workers.size()), generator, DEFAULT_BATCH_SIZE);
+    }
+
+    @Override
+    public @Nullable DefaultQuery<I, Word<O>> findCounterExample(MealyMachine<?, I, ?, O> hypothesis,
+            Collection<? extends I> inputs) {
+        Iterator<Word<I>> tests = this.generator.generateTestWords(hypothesis, inputs);
+        CompletionService<DefaultQuery<I, Word<O>>> completion = new ExecutorCompletionService<>(this.executor);
+        List<Future<DefaultQuery<I, Word<O>>>> running = new ArrayList<>(this.workerCount);
+        AtomicBoolean found = new AtomicBoolean(false);
+        try {
+            while (true) {
+                while (running.size() < this.workerCount && tests.hasNext()) {
+                    List<DefaultQuery<I, Word<O>>> batch = new ArrayList<>(this.batchSize);
+                    while (batch.size() < this.batchSize && tests.hasNext()) {
+                        batch.add(new DefaultQuery<>(tests.next()));
+                    }
+                    running.add(completion.submit(() -> this.testBatch(hypothesis, batch, found)));
+                }
+                if (running.isEmpty()) {
+                    return null;
+                }
+                Future<DefaultQuery<I, Word<O>>> done = completion.take();
+                running.remove(done);
+                DefaultQuery<I, Word<O>> ce = getResult(done);
+                if (ce != null) {
+                    found.set(true);
+                    // Batches which finished in the meantime may have a shorter counterexample
+                    for (Future<DefaultQuery<I, Word<O>>> other; (other = completion.poll()) != null;) {
+                        running.remove(other);
+                        ce = shortest(ce, getResult(other));
+                    }
+                    return ce;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers", e);
+        } finally {
+            found.set(true);
+            running.forEach(f -> f.cancel(false));
+        }
+    }
+
+    /**
+     * Asks a batch using an idle worker, waiting for one if they are all busy
+     *
+     * @param found Set once a counterexample is found, after which the batch is
+     *              not asked
+     * @return The shortest test word in the batch on which the hypothesis is
+     *         wrong, or null if there is none
+     */
+    private DefaultQuery<I, Word<O>> testBatch(MealyMachine<?, I, ?, O> hypothesis,
+            List<DefaultQuery<I, Word<O>>> batch, AtomicBoolean found) throws InterruptedException {
+        MembershipOracle<I, Word<O>> worker = this.idleWorkers.take();
+        try {
+            if (found.get()) {
+                return null;
+            }
+            worker.processQueries(batch);
+        } finally {
+            this.idleWorkers.add(worker);
+        }
+        DefaultQuery<I, Word<O>> ce = null;
+        for (DefaultQuery<I, Word<O>> query : batch) {
+            Word<O> expected = hypothesis.computeSuffixOutput(query.getPrefix(), query.getSuffix());
+            if (!expected.equals(query.getOutput())) {
+                ce = shortest(ce, query);
+            }
+        }
+        return ce;
+    }
+
+    private static <I, O> DefaultQuery<I, Word<O>> getResult(Future<DefaultQuery<I, Word<O>>> future)
+            throws InterruptedException {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new IllegalStateException("A worker failed to ask its test words", e.getCause());
+        }
+    }
+
+    private static <I, O> DefaultQuery<I, Word<O>> shortest(DefaultQuery<I, Word<O>> ce,
+            DefaultQuery<I, Word<O>> other) {
+        if (ce == null || (other != null && other.getInput().length() < ce.getInput().length())) {
+            return other;
+        }
+        return ce;
+    }
+
+    /**
+     * Shuts down the executor. Batches of test words that are being asked are
+     * finished, but no new batches are started.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+}
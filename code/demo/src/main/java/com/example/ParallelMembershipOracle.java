@@ -0,0 +1,198 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.oracle.membership.SULOracle;
+import de.learnlib.query.Query;
+import de.learnlib.sul.SUL;
+import net.automatalib.word.Word;
+
+/**
+ * Membership oracle which answers batches of queries using several workers at
+ * the same time. Every worker is an oracle of its own, for example for one
+ * instance of the system under learning, and is only used by one thread at a
+ * time.
+ * <p>
+ * A batch is split into consecutive chunks of at least {@code minBatchSize}
+ * queries, and every chunk is answered by an idle worker on a thread of the
+ * executor. Batches that are too small to split are answered on the calling
+ * thread.
+ * <p>
+ * The executor can be any {@link ExecutorService}: a pool of platform threads
+ * created by {@link #platformThreads(int)}, or a pool of threads from another
+ * {@link ThreadFactory}, such as {@code Thread.ofVirtual().factory()} on Java
+ * versions that have virtual threads. The workers do not depend on the threads
+ * that use them, so both work the same.
+ */
+public class ParallelMembershipOracle<I, O> implements MembershipOracle.MealyMembershipOracle<I, O>, AutoCloseable {
+
+    /** Smallest number of queries that is worth sending to another thread */
+    public static final int DEFAULT_MIN_BATCH_SIZE = 10;
+
+    private final int workerCount;
+    private final BlockingQueue<MembershipOracle<I, Word<O>>> idleWorkers;
+    private final ExecutorService executor;
+    private final int minBatchSize;
+
+    /**
+     * @param workers      The oracles answering the queries, each of which is used
+     *                     by one thread at a time
+     * @param executor     The executor running the workers, which is shut down by
+     *                     {@link #close()}
+     * @param minBatchSize The minimum number of queries given to a worker at once
+     */
+    public ParallelMembershipOracle(Collection<? extends MembershipOracle<I, Word<O>>> workers,
+            ExecutorService executor, int minBatchSize) {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        if (minBatchSize <= 0) {
+            throw new IllegalArgumentException("The minimum batch size should be positive, but was " + minBatchSize);
+        }
+        this.workerCount = workers.size();
+        this.idleWorkers = new ArrayBlockingQueue<>(this.workerCount, false, workers);
+        this.executor = executor;
+        this.minBatchSize = minBatchSize;
+    }
+
+    public ParallelMembershipOracle(Collection<? extends MembershipOracle<I, Word<O>>> workers) {
+        this(workers, platformThreads(workers.size()), DEFAULT_MIN_BATCH_SIZE);
+    }
+
+    /**
+     * @param workers       The oracles answering the queries, each of which is
+     *                      used by one thread at a time
+     * @param threadFactory The factory of the threads running the workers, one
+     *                      thread for every worker
+     */
+    public ParallelMembershipOracle(Collection<? extends MembershipOracle<I, Word<O>>> workers,
+            ThreadFactory threadFactory) {
+        this(workers, threads(workers.size(), threadFactory), DEFAULT_MIN_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a pool with one worker for every system under learning. The workers
+     * reset their system before and after every query.
+     *
+     * @param suls     The systems under learning, one for every worker
+     * @param executor The executor running the workers
+     * @return The oracle
+     */
+    public static <I, O> ParallelMembershipOracle<I, O> forSULs(Collection<? extends SUL<I, O>> suls,
+            ExecutorService executor) {
+        List<MembershipOracle<I, Word<O>>> workers = new ArrayList<>(suls.size());
+        for (SUL<I, O> sul : suls) {
+            workers.add(new SULOracle<>(sul));
+        }
+        return new ParallelMembershipOracle<>(workers, executor, DEFAULT_MIN_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a fixed pool of daemon platform threads.
+     *
+     * @param threads The number of threads
+     * @return The executor
+     */
+    public static ExecutorService platformThreads(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return threads(threads, runnable -> {
+            Thread thread = new Thread(runnable, "membership-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a fixed pool of threads from a factory, for example
+     * {@code Thread.ofVirtual().name("membership-worker-", 1).factory()}.
+     *
+     * @param threads       The number of threads
+     * @param threadFactory The factory of the threads
+     * @return The executor
+     */
+    public static ExecutorService threads(int threads, ThreadFactory threadFactory) {
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    public int getWorkerCount() {
+        return this.workerCount;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        int chunkCount = Math.min(this.workerCount, queries.size() / this.minBatchSize);
+        if (chunkCount <= 1) {
+            this.processChunk(queries);
+            return;
+        }
+        List<? extends Query<I, Word<O>>> queryList = queries instanceof List
+                ? (List<? extends Query<I, Word<O>>>) queries
+                : new ArrayList<>(queries);
+        List<Future<?>> futures = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            // Spread the remainder over the first chunks
+            int start = (int) ((long) queryList.size() * i / chunkCount);
+            int end = (int) ((long) queryList.size() * (i + 1) / chunkCount);
+            List<? extends Query<I, Word<O>>> chunk = queryList.subList(start, end);
+            futures.add(this.executor.submit(() -> this.processChunk(chunk)));
+        }
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new IllegalStateException("A worker failed to answer its queries", e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted while waiting for the workers", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Answers queries using an idle worker, waiting for one if they are all busy.
+     *
+     * @param chunk The queries
+     */
+    private void processChunk(Collection<? extends Query<I, Word<O>>> chunk) {
+        MembershipOracle<I, Word<O>> worker;
+        try {
+            worker = this.idleWorkers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a worker", e);
+        }
+        try {
+            worker.processQueries(chunk);
+        } finally {
+            this.idleWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Shuts down the executor. Queries that are being answered are finished.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+    }
+}
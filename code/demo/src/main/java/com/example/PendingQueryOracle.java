@@ -0,0 +1,116 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.DefaultQuery;
+import de.learnlib.query.Query;
+import net.automatalib.word.Word;
+
+/**
+ * Membership oracle which makes sure that a word is not asked to the delegate by
+ * several threads at the same time. If a thread asks a word that another thread
+ * is already asking, it waits for that answer instead.
+ * <p>
+ * This is meant to be placed behind a cache that is shared between threads:
+ * the cache answers words that have been asked before, and this oracle handles
+ * words that are being asked right now.
+ * <p>
+ * The number of queries sent to the delegate is counted per thread, so that the
+ * caller can find out which of its queries had to be answered by the delegate.
+ */
+public class PendingQueryOracle<I, O> implements MembershipOracle.MealyMembershipOracle<I, O> {
+
+    private final MembershipOracle<I, Word<O>> delegate;
+    /** The output for every input word that is currently being asked */
+    private final ConcurrentHashMap<Word<I>, CompletableFuture<Word<O>>> pending = new ConcurrentHashMap<>();
+    private final ThreadLocal<long[]> forwardedByThread = ThreadLocal.withInitial(() -> new long[1]);
+    private final AtomicLong forwarded = new AtomicLong();
+
+    public PendingQueryOracle(MembershipOracle<I, Word<O>> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        List<Query<I, Word<O>>> waiting = new ArrayList<>();
+        List<CompletableFuture<Word<O>>> waitingFor = new ArrayList<>();
+        List<DefaultQuery<I, Word<O>>> owned = new ArrayList<>();
+        List<CompletableFuture<Word<O>>> ownedFutures = new ArrayList<>();
+        List<Query<I, Word<O>>> ownedOriginals = new ArrayList<>();
+        for (Query<I, Word<O>> query : queries) {
+            Word<I> input = query.getInput();
+            CompletableFuture<Word<O>> future = new CompletableFuture<>();
+            CompletableFuture<Word<O>> existing = this.pending.putIfAbsent(input, future);
+            if (existing == null) {
+                owned.add(new DefaultQuery<>(input));
+                ownedFutures.add(future);
+                ownedOriginals.add(query);
+            } else {
+                waiting.add(query);
+                waitingFor.add(existing);
+            }
+        }
+        // Answer our own queries before waiting for other threads, so two threads
+        // can never wait for each other
+        try {
+            if (!owned.isEmpty()) {
+                this.delegate.processQueries(owned);
+                this.forwardedByThread.get()[0] += owned.size();
+                this.forwarded.addAndGet(owned.size());
+            }
+            for (int i = 0; i < owned.size(); i++) {
+                Word<O> output = owned.get(i).getOutput();
+                answer(ownedOriginals.get(i), output);
+                ownedFutures.get(i).complete(output);
+            }
+        } catch (RuntimeException | Error e) {
+            for (CompletableFuture<Word<O>> future : ownedFutures) {
+                future.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            for (int i = 0; i < owned.size(); i++) {
+                this.pending.remove(owned.get(i).getInput(), ownedFutures.get(i));
+            }
+        }
+        for (int i = 0; i < waiting.size(); i++) {
+            try {
+                answer(waiting.get(i), waitingFor.get(i).get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Another thread failed to answer " + waiting.get(i).getInput(),
+                        e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for another thread", e);
+            }
+        }
+    }
+
+    /**
+     * Answers a query with the part of the output that belongs to its suffix
+     */
+    private static <I, O> void answer(Query<I, Word<O>> query, Word<O> output) {
+        query.answer(output.subWord(query.getPrefix().length()));
+    }
+
+    /**
+     * @return The number of queries the current thread has sent to the delegate
+     */
+    public long getForwardedByCurrentThread() {
+        return this.forwardedByThread.get()[0];
+    }
+
+    /**
+     * @return The number of queries sent to the delegate by all threads
+     */
+    public long getForwardedCount() {
+        return this.forwarded.get();
+    }
+}
@@ -0,0 +1,559 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.DefaultQuery;
+import de.learnlib.query.Query;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.word.Word;
+import net.automatalib.word.WordBuilder;
+
+/**
+ * Membership oracle with a cache that is kept in a file, so that the answers of
+ * the target are reused by later runs, whatever the algorithm. A query is only
+ * sent to the delegate if its input word has not been asked before, neither on
+ * its own nor as a prefix of a longer word.
+ * <p>
+ * The cache is a prefix tree of the asked words, with the output of every
+ * transition. The file starts with a header containing the input symbols, and
+ * continues with a log of records which each add output symbols or a branch to
+ * the tree. Only the transitions which are new are written, and every record
+ * ends with a CRC-32 checksum. The log is only appended to, and the records of
+ * a batch of queries are written to the file as soon as the batch is answered.
+ * They are forced to disk at most once every {@link #SYNC_INTERVAL_NANOS} and
+ * when the cache is closed, because some learners ask one query at a time. If
+ * the program stops while a record is being written, the incomplete record is
+ * removed when the file is opened again.
+ * <p>
+ * The words of a batch are only added to the prefix tree once their records
+ * have been written. If the target contradicts the cache, or the records cannot
+ * be written, the whole batch is left out of the tree and the file, so that the
+ * node ids in the file stay the same as in memory. If the file cannot be restored
+ * after a failed write, the cache refuses to write anything else.
+ * <p>
+ * An interrupt of a thread that is writing closes the file channel. The channel
+ * is then opened again and the records are written again, after which the
+ * interrupt flag of the thread is restored, so that an interrupted thread does
+ * not stop the other threads from using the cache. If the thread is
+ * interrupted again on every attempt, the batch fails like any other batch
+ * whose records cannot be written.
+ * <p>
+ * Queries may be asked from several threads. The delegate is called outside of
+ * the lock, so the same word may reach the delegate twice if two threads miss
+ * it at the same time.
+ */
+public class PersistentQueryCache<I, O> implements MembershipOracle.MealyMembershipOracle<I, O>, Closeable {
+
+    public static final int VERSION = 1;
+    public static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static final int MAGIC = 0x4F4C5143;
+    private static final int OUTPUT_SYMBOL = 1;
+    private static final int BRANCH = 2;
+    private static final int NO_NODE = -1;
+    /** The number of times the records of a batch are written when writing is interrupted */
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final Alphabet<I> inputAlphabet;
+    private final MembershipOracle<I, Word<O>> delegate;
+    private final SymbolCodec<O> outputCodec;
+    private final Path file;
+    /** Opened again when an interrupt closed it, see {@link #append(byte[])} */
+    private FileChannel channel;
+    /**
+     * The end of the last complete record in the file. The size of the channel
+     * is not used, because it cannot be read while the thread is interrupted.
+     */
+    private long fileEnd = 0;
+
+    private final List<O> outputs = new ArrayList<>();
+    private final Map<O, Integer> outputIndices = new HashMap<>();
+    /**
+     * The children of the nodes of the prefix tree, at
+     * {@code node * inputAlphabet.size() + input}, or {@link #NO_NODE}
+     */
+    private int[] children;
+    /** For every node, the index of the output of the transition to the node */
+    private int[] nodeOutputs;
+    private int nodeCount = 1;
+    private long misses = 0;
+    private long lastSync = System.nanoTime();
+    /** Set when a write failed and the end of the file could not be restored */
+    private IOException writeFailure = null;
+
+    /**
+     * Opens the cache in a file, or creates it if the file does not exist.
+     *
+     * @param file          The file of the cache
+     * @param inputAlphabet The input alphabet of the target, which should contain
+     *                      the same symbols as the alphabet the file was created
+     *                      with
+     * @param delegate      The oracle answering the queries that are not in the
+     *                      cache
+     * @param inputCodec    The codec for the input symbols
+     * @param outputCodec   The codec for the output symbols
+     * @throws IOException If the file could not be read or written, or belongs to
+     *                     a different input alphabet
+     */
+    public PersistentQueryCache(Path file, Alphabet<I> inputAlphabet, MembershipOracle<I, Word<O>> delegate,
+            SymbolCodec<I> inputCodec, SymbolCodec<O> outputCodec) throws IOException {
+        this.inputAlphabet = inputAlphabet;
+        this.delegate = delegate;
+        this.outputCodec = outputCodec;
+        this.children = new int[64 * inputAlphabet.size()];
+        Arrays.fill(this.children, NO_NODE);
+        this.nodeOutputs = new int[64];
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (this.channel.size() > 0) {
+                this.load(file, inputCodec);
+            } else {
+                this.writeHeader(inputCodec);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    private void writeHeader(SymbolCodec<I> inputCodec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeVarInt(out, this.inputAlphabet.size());
+        for (I input : this.inputAlphabet) {
+            inputCodec.write(out, input);
+        }
+        this.append(bytes.toByteArray());
+    }
+
+    /**
+     * Reads the header and replays the log, and cuts off an incomplete or
+     * corrupt record at the end.
+     */
+    private void load(Path file, SymbolCodec<I> inputCodec) throws IOException {
+        // The file is read instead of mapped, because a mapped file cannot be truncated on every platform
+        long size = this.channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file + " is too large for a query cache");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        }
+        buffer.flip();
+        this.fileEnd = size;
+        DataInput header = new DataInputStream(new ByteBufferInputStream(buffer));
+        int[] inputs;
+        try {
+            inputs = this.readHeader(file, inputCodec, header);
+        } catch (EOFException e) {
+            // The program stopped while the file was being created
+            this.channel.truncate(0);
+            this.fileEnd = 0;
+            this.writeHeader(inputCodec);
+            return;
+        }
+
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            byte[] payload = readRecord(buffer);
+            if (payload == null) {
+                System.err.println("Removing an incomplete record at the end of " + file);
+                this.channel.truncate(start);
+                this.fileEnd = start;
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            int type = in.readUnsignedByte();
+            if (type == OUTPUT_SYMBOL) {
+                O output = this.outputCodec.read(in);
+                this.outputIndices.put(output, this.outputs.size());
+                this.outputs.add(output);
+            } else if (type == BRANCH) {
+                int node = readVarInt(in);
+                for (int i = readVarInt(in); i > 0; i--) {
+                    int input = inputs[readVarInt(in)];
+                    node = this.addChild(node, input, readVarInt(in));
+                }
+            } else {
+                throw new IOException("Unknown record type " + type + " in " + file);
+            }
+        }
+    }
+
+    /**
+     * @return For every input index in the file, the index in the input alphabet
+     */
+    private int[] readHeader(Path file, SymbolCodec<I> inputCodec, DataInput header) throws IOException {
+        if (header.readInt() != MAGIC) {
+            throw new IOException(file + " is not a query cache");
+        }
+        int version = header.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported query cache version " + version + " in " + file);
+        }
+        int inputCount = readVarInt(header);
+        int[] inputs = new int[inputCount];
+        for (int i = 0; i < inputCount; i++) {
+            I input = inputCodec.read(header);
+            if (!this.inputAlphabet.containsSymbol(input)) {
+                throw new IOException(file + " is a query cache for a different input alphabet");
+            }
+            inputs[i] = this.inputAlphabet.getSymbolIndex(input);
+        }
+        if (inputCount != this.inputAlphabet.size()) {
+            throw new IOException(file + " is a query cache for a different input alphabet");
+        }
+        return inputs;
+    }
+
+    /**
+     * @return The payload of the record at the position of the buffer, or null
+     *         if the record is incomplete or its checksum does not match
+     */
+    private static byte[] readRecord(ByteBuffer buffer) {
+        int length = 0;
+        for (int shift = 0;; shift += 7) {
+            if (!buffer.hasRemaining() || shift >= 32) {
+                return null;
+            }
+            int b = buffer.get() & 0xFF;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length <= 0 || buffer.remaining() < (long) length + Integer.BYTES) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        return buffer.getInt() == (int) checksum.getValue() ? payload : null;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        // The queries that are not in the cache, by their input word
+        Map<Word<I>, List<Query<I, Word<O>>>> missing = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Query<I, Word<O>> query : queries) {
+                Word<O> output = this.lookup(query.getPrefix(), query.getSuffix());
+                if (output != null) {
+                    query.answer(output);
+                } else {
+                    missing.computeIfAbsent(query.getInput(), word -> new ArrayList<>()).add(query);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<DefaultQuery<I, Word<O>>> asked = new ArrayList<>(missing.size());
+        for (Word<I> word : missing.keySet()) {
+            asked.add(new DefaultQuery<>(word));
+        }
+        this.delegate.processQueries(asked);
+
+        synchronized (this) {
+            this.misses += asked.size();
+            this.insertAll(asked);
+        }
+        for (DefaultQuery<I, Word<O>> query : asked) {
+            for (Query<I, Word<O>> waiting : missing.get(query.getInput())) {
+                waiting.answer(query.getOutput().suffix(waiting.getSuffix().length()));
+            }
+        }
+    }
+
+    /**
+     * Adds the answered words to the prefix tree and writes their records. If a
+     * word does not match the cache or the records cannot be written, the tree is
+     * restored to the state before the batch.
+     */
+    private void insertAll(List<DefaultQuery<I, Word<O>>> asked) {
+        if (this.writeFailure != null) {
+            throw new UncheckedIOException("The query cache cannot be written after an earlier failure",
+                    this.writeFailure);
+        }
+        int oldNodeCount = this.nodeCount;
+        int oldOutputCount = this.outputs.size();
+        // The slots of existing nodes which the batch points to new nodes
+        List<Integer> branchSlots = new ArrayList<>();
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (DefaultQuery<I, Word<O>> query : asked) {
+                this.insert(query.getInput(), query.getOutput(), records, branchSlots);
+            }
+            this.append(records.toByteArray());
+        } catch (RuntimeException | IOException e) {
+            for (int slot : branchSlots) {
+                this.children[slot] = NO_NODE;
+            }
+            Arrays.fill(this.children, oldNodeCount * this.inputAlphabet.size(),
+                    this.nodeCount * this.inputAlphabet.size(), NO_NODE);
+            this.nodeCount = oldNodeCount;
+            while (this.outputs.size() > oldOutputCount) {
+                this.outputIndices.remove(this.outputs.remove(this.outputs.size() - 1));
+            }
+            if (e instanceof IOException) {
+                throw new UncheckedIOException("Could not write to the query cache", (IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    /**
+     * @return The output for the suffix after the prefix, or null if the word is
+     *         not in the cache
+     */
+    private Word<O> lookup(Word<I> prefix, Word<I> suffix) {
+        int node = 0;
+        for (I input : prefix) {
+            node = this.children[node * this.inputAlphabet.size() + this.inputAlphabet.getSymbolIndex(input)];
+            if (node == NO_NODE) {
+                return null;
+            }
+        }
+        WordBuilder<O> output = new WordBuilder<>(suffix.length());
+        for (I input : suffix) {
+            node = this.children[node * this.inputAlphabet.size() + this.inputAlphabet.getSymbolIndex(input)];
+            if (node == NO_NODE) {
+                return null;
+            }
+            output.append(this.outputs.get(this.nodeOutputs[node]));
+        }
+        return output.toWord();
+    }
+
+    /**
+     * Adds a word to the prefix tree, and writes the records for the new output
+     * symbols and transitions.
+     *
+     * @param branchSlots The slot of the existing node at which the word branches
+     *                    off is added to this list
+     */
+    private void insert(Word<I> input, Word<O> output, ByteArrayOutputStream records, List<Integer> branchSlots) {
+        int node = 0;
+        int i = 0;
+        for (; i < input.length(); i++) {
+            int child = this.children[node * this.inputAlphabet.size()
+                    + this.inputAlphabet.getSymbolIndex(input.getSymbol(i))];
+            if (child == NO_NODE) {
+                break;
+            }
+            if (!this.outputs.get(this.nodeOutputs[child]).equals(output.getSymbol(i))) {
+                throw new IllegalStateException("The target gave output " + output + " for " + input
+                        + ", which does not match the cache at position " + i);
+            }
+            node = child;
+        }
+        if (i == input.length()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream branch = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(branch);
+            out.writeByte(BRANCH);
+            writeVarInt(out, node);
+            writeVarInt(out, input.length() - i);
+            branchSlots.add(node * this.inputAlphabet.size() + this.inputAlphabet.getSymbolIndex(input.getSymbol(i)));
+            for (; i < input.length(); i++) {
+                int inputIndex = this.inputAlphabet.getSymbolIndex(input.getSymbol(i));
+                int outputIndex = this.internOutput(output.getSymbol(i), records);
+                writeVarInt(out, inputIndex);
+                writeVarInt(out, outputIndex);
+                node = this.addChild(node, inputIndex, outputIndex);
+            }
+            writeRecord(records, branch.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int internOutput(O output, ByteArrayOutputStream records) throws IOException {
+        Integer index = this.outputIndices.get(output);
+        if (index != null) {
+            return index;
+        }
+        ByteArrayOutputStream symbol = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(symbol);
+        out.writeByte(OUTPUT_SYMBOL);
+        this.outputCodec.write(out, output);
+        writeRecord(records, symbol.toByteArray());
+        this.outputIndices.put(output, this.outputs.size());
+        this.outputs.add(output);
+        return this.outputs.size() - 1;
+    }
+
+    private int addChild(int node, int input, int output) {
+        if (this.nodeCount == this.nodeOutputs.length) {
+            int oldLength = this.children.length;
+            this.children = Arrays.copyOf(this.children, oldLength * 2);
+            Arrays.fill(this.children, oldLength, this.children.length, NO_NODE);
+            this.nodeOutputs = Arrays.copyOf(this.nodeOutputs, this.nodeOutputs.length * 2);
+        }
+        int child = this.nodeCount++;
+        this.children[node * this.inputAlphabet.size() + input] = child;
+        this.nodeOutputs[child] = output;
+        return child;
+    }
+
+    private static void writeRecord(ByteArrayOutputStream records, byte[] payload) throws IOException {
+        DataOutputStream out = new DataOutputStream(records);
+        writeVarInt(out, payload.length);
+        out.write(payload);
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        out.writeInt((int) checksum.getValue());
+    }
+
+    /**
+     * Appends bytes to the file, and forces them to disk if the last time was
+     * long enough ago. If the bytes cannot be written, the file is cut back to
+     * its old end, so that no incomplete record is followed by later records.
+     * If the thread is interrupted while writing, the bytes are written again on
+     * a new channel, and the interrupt flag is set again afterwards.
+     */
+    private void append(byte[] bytes) throws IOException {
+        if (bytes.length == 0) {
+            return;
+        }
+        long end = this.fileEnd;
+        boolean interrupted = false;
+        try {
+            for (int attempt = 1;; attempt++) {
+                try {
+                    this.write(bytes, end);
+                    this.fileEnd = end + bytes.length;
+                    break;
+                } catch (ClosedByInterruptException e) {
+                    // Clear the flag, or the new channel is closed again right away
+                    interrupted |= Thread.interrupted();
+                    this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    if (attempt == MAX_WRITE_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            try {
+                this.channel.truncate(end);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                this.writeFailure = e;
+            }
+            throw e;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes bytes at a position of the file, and forces them to disk if the
+     * last time was long enough ago
+     */
+    private void write(byte[] bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer, position + buffer.position());
+        }
+        if (System.nanoTime() - this.lastSync >= SYNC_INTERVAL_NANOS) {
+            this.channel.force(false);
+            this.lastSync = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return The number of input words that were not in the cache and were sent
+     *         to the delegate
+     */
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    /**
+     * @return The number of transitions in the prefix tree of the cache
+     */
+    public synchronized int getTransitionCount() {
+        return this.nodeCount - 1;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel.isOpen()) {
+            this.channel.force(false);
+            this.channel.close();
+        }
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt query cache: variable length number is too long");
+    }
+
+    /**
+     * Reads the header of the file from the buffer, advancing it.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+    }
+}
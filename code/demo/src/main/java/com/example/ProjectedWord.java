@@ -0,0 +1,66 @@
+package com.example;
+
+import net.automatalib.word.Word;
+
+/**
+ * A word of outputs, projected on a single output: the symbol at a position is
+ * true if and only if the output at that position is the projected output.
+ * <p>
+ * The projection is a view on the word of outputs, which is computed when a
+ * symbol is read. All components of a {@link MealyDecomposer} can therefore
+ * share the same answer, each with its own view, without building a separate
+ * boolean word for every component. Subwords are views on the same word as
+ * well.
+ */
+public final class ProjectedWord<O> extends Word<Boolean> {
+
+    private final Word<? extends O> source;
+    private final O output;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param source The word of outputs
+     * @param output The output to project on
+     */
+    public ProjectedWord(Word<? extends O> source, O output) {
+        this(source, output, 0, source.length());
+    }
+
+    private ProjectedWord(Word<? extends O> source, O output, int offset, int length) {
+        this.source = source;
+        this.output = output;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return The word of outputs that this word is a projection of, from the
+     *         first position of this word on
+     */
+    public Word<? extends O> getSource() {
+        return this.source.subWord(this.offset, this.offset + this.length);
+    }
+
+    public O getOutput() {
+        return this.output;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public Boolean getSymbol(int index) {
+        if (index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return this.output.equals(this.source.getSymbol(this.offset + index));
+    }
+
+    @Override
+    protected Word<Boolean> subWordInternal(int fromIndex, int toIndex) {
+        return new ProjectedWord<>(this.source, this.output, this.offset + fromIndex, toIndex - fromIndex);
+    }
+}
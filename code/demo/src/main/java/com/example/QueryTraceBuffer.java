@@ -0,0 +1,125 @@
+package com.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Ring buffer of fixed size records, one for every membership query asked to
+ * the target, see {@link TracingMembershipOracle}. When the buffer is full, the
+ * oldest records are overwritten. The records can be dumped to a file, which is
+ * read by {@code code/python/query_trace.py}.
+ * <p>
+ * The file starts with the magic number {@code OLQT}, a version number, the
+ * size of a record, the number of records and the number of records that were
+ * overwritten. Then follow the names of the phases, as a count and a string for
+ * every phase, and the records from old to new. A record consists of:
+ * <ul>
+ * <li>the end of the batch of the query, in nanoseconds since the buffer was
+ * created (long)</li>
+ * <li>the time the batch took, in nanoseconds (long)</li>
+ * <li>the length of the prefix of the query (int)</li>
+ * <li>the length of the suffix of the query (int)</li>
+ * <li>the number of queries in the batch (int)</li>
+ * <li>the ordinal of the {@link LearningListener.Phase} in which the query was
+ * asked, or -1 if it is not known (byte)</li>
+ * <li>three bytes of padding</li>
+ * </ul>
+ * All numbers are big-endian.
+ */
+public class QueryTraceBuffer {
+
+    public static final int VERSION = 1;
+
+    public static final int RECORD_BYTES = 32;
+
+    private static final int MAGIC = 0x4F4C5154;
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private final long createdNanos = System.nanoTime();
+    private long written = 0;
+
+    /**
+     * @param capacity The maximum number of records kept
+     */
+    public QueryTraceBuffer(int capacity) {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocate(capacity * RECORD_BYTES);
+    }
+
+    /**
+     * Adds a record, overwriting the oldest record if the buffer is full
+     *
+     * @param phase        The ordinal of the phase, or -1
+     * @param prefixLength The length of the prefix of the query
+     * @param suffixLength The length of the suffix of the query
+     * @param batchSize    The number of queries in the batch
+     * @param batchNanos   The time the batch took
+     * @param endNanos     The value of {@link System#nanoTime()} at the end of the
+     *                     batch
+     */
+    public synchronized void record(int phase, int prefixLength, int suffixLength, int batchSize, long batchNanos,
+            long endNanos) {
+        int offset = (int) (this.written % this.capacity) * RECORD_BYTES;
+        this.records.putLong(offset, endNanos - this.createdNanos);
+        this.records.putLong(offset + 8, batchNanos);
+        this.records.putInt(offset + 16, prefixLength);
+        this.records.putInt(offset + 20, suffixLength);
+        this.records.putInt(offset + 24, batchSize);
+        this.records.put(offset + 28, (byte) phase);
+        this.written++;
+    }
+
+    /**
+     * @return The number of records added so far, including the ones that were
+     *         overwritten
+     */
+    public synchronized long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * @return The number of records in the buffer
+     */
+    public synchronized int size() {
+        return (int) Math.min(this.written, this.capacity);
+    }
+
+    /**
+     * Writes the records in the buffer to a file, replacing the file if it exists
+     *
+     * @param file The file
+     * @throws IOException If the file could not be written
+     */
+    public synchronized void dump(Path file) throws IOException {
+        int size = this.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(RECORD_BYTES);
+            out.writeInt(size);
+            out.writeLong(this.written - size);
+            LearningListener.Phase[] phases = LearningListener.Phase.values();
+            out.writeInt(phases.length);
+            for (LearningListener.Phase phase : phases) {
+                byte[] name = phase.name().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            // The oldest record is the next one to be overwritten
+            int first = this.written > this.capacity ? (int) (this.written % this.capacity) : 0;
+            byte[] array = this.records.array();
+            for (int i = 0; i < size; i++) {
+                out.write(array, ((first + i) % this.capacity) * RECORD_BYTES, RECORD_BYTES);
+            }
+        }
+    }
+}
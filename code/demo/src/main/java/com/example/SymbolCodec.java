@@ -0,0 +1,42 @@
+package com.example;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes symbols to and reads symbols from a binary stream, for example for
+ * {@link TableSnapshot}. Every distinct symbol is written only once, so the
+ * encoding does not need to be compact.
+ *
+ * @param <T> The type of the symbols
+ */
+public interface SymbolCodec<T> {
+
+    /** Codec for string symbols, such as the symbols of the models in {@code models/} */
+    SymbolCodec<String> STRING = new SymbolCodec<>() {
+        @Override
+        public void write(DataOutput out, String symbol) throws IOException {
+            out.writeUTF(symbol);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    /**
+     * @param out    The stream to write to
+     * @param symbol The symbol to be written
+     * @throws IOException If the stream could not be written
+     */
+    void write(DataOutput out, T symbol) throws IOException;
+
+    /**
+     * @param in The stream to read from
+     * @return The symbol read from the stream
+     * @throws IOException If the stream could not be read
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,308 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.Query;
+import net.automatalib.word.Word;
+import net.automatalib.word.WordBuilder;
+
+/**
+ * The contents of an {@link OutputObservationTable}: its short prefixes, its
+ * suffixes, its output symbols and the cells of all its rows. A snapshot can be
+ * written to a file and read back, so that learning can be resumed later with
+ * {@link OutputLstar#startLearning(TableSnapshot, boolean)} instead of starting
+ * over.
+ * <p>
+ * The file starts with the magic number {@code OLST} and a version number.
+ * Every input and output symbol is written once by a {@link SymbolCodec}, after
+ * which words and cells are written as variable length indices into the lists
+ * of symbols. The file ends with a CRC-32 checksum of everything before it.
+ */
+public class TableSnapshot<I, O> {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4F4C5354;
+
+    private final List<I> inputs;
+    private final List<O> outputs;
+    private final List<Word<I>> suffixes;
+    /** The labels of all rows, the short prefix rows first */
+    private final List<Word<I>> rows;
+    private final int shortPrefixCount;
+    /**
+     * For every row, the indices of the output symbols of all its cells, in the
+     * order of the suffixes
+     */
+    private final int[][] cells;
+    /** For every suffix, the position of its cell in a row */
+    private final int[] offsets;
+    private final Map<Word<I>, Integer> rowIndices = new HashMap<>();
+    private final Map<Word<I>, Integer> suffixIndices = new HashMap<>();
+
+    private TableSnapshot(List<I> inputs, List<O> outputs, List<Word<I>> suffixes, List<Word<I>> rows,
+            int shortPrefixCount, int[][] cells) {
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.suffixes = suffixes;
+        this.rows = rows;
+        this.shortPrefixCount = shortPrefixCount;
+        this.cells = cells;
+        this.offsets = new int[suffixes.size() + 1];
+        for (int i = 0; i < suffixes.size(); i++) {
+            this.offsets[i + 1] = this.offsets[i] + suffixes.get(i).length();
+            this.suffixIndices.put(suffixes.get(i), i);
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            if (cells[i].length != this.offsets[suffixes.size()]) {
+                throw new IllegalArgumentException("Row " + rows.get(i) + " does not have a cell for every suffix");
+            }
+            this.rowIndices.put(rows.get(i), i);
+        }
+    }
+
+    /**
+     * Takes a snapshot of an initialized table.
+     *
+     * @param table The table
+     * @return The snapshot, which does not change when the table changes
+     */
+    public static <I, O> TableSnapshot<I, O> of(OutputObservationTable<I, O> table) {
+        List<Word<I>> rows = new ArrayList<>();
+        List<int[]> cells = new ArrayList<>();
+        for (OutputRow<I, O> row : table.getShortPrefixRows()) {
+            rows.add(row.getLabel());
+            cells.add(table.getCells(row));
+        }
+        for (OutputRow<I, O> row : table.getLongPrefixRows()) {
+            rows.add(row.getLabel());
+            cells.add(table.getCells(row));
+        }
+        return new TableSnapshot<>(new ArrayList<>(table.getInputAlphabet()),
+                new ArrayList<>(table.getOutputAlphabet()), new ArrayList<>(table.getSuffixes()), rows,
+                table.getShortPrefixRows().size(), cells.toArray(new int[0][]));
+    }
+
+    public List<I> getInputs() {
+        return Collections.unmodifiableList(this.inputs);
+    }
+
+    /**
+     * @return The output symbols, in the order of the output alphabet of the
+     *         table
+     */
+    public List<O> getOutputs() {
+        return Collections.unmodifiableList(this.outputs);
+    }
+
+    public List<Word<I>> getSuffixes() {
+        return Collections.unmodifiableList(this.suffixes);
+    }
+
+    public List<Word<I>> getShortPrefixes() {
+        return Collections.unmodifiableList(this.rows.subList(0, this.shortPrefixCount));
+    }
+
+    /**
+     * @param prefix The label of a row
+     * @param suffix A suffix of the table
+     * @return The output for the suffix after the prefix, as stored in the cell
+     * @throws IllegalArgumentException If the snapshot has no such cell
+     */
+    public Word<O> getCell(Word<I> prefix, Word<I> suffix) {
+        Integer row = this.rowIndices.get(prefix);
+        Integer suffixIndex = this.suffixIndices.get(suffix);
+        if (row == null || suffixIndex == null) {
+            throw new IllegalArgumentException("The snapshot has no cell for prefix " + prefix + " and suffix "
+                    + suffix);
+        }
+        WordBuilder<O> cell = new WordBuilder<>(suffix.length());
+        for (int i = this.offsets[suffixIndex]; i < this.offsets[suffixIndex + 1]; i++) {
+            cell.append(this.outputs.get(this.cells[row][i]));
+        }
+        return cell.toWord();
+    }
+
+    /**
+     * @return A membership oracle answering the queries of the cells of the
+     *         snapshot with their stored outputs, and failing for all other
+     *         queries
+     */
+    public MembershipOracle.MealyMembershipOracle<I, O> asOracle() {
+        return new MembershipOracle.MealyMembershipOracle<>() {
+            @Override
+            public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+                for (Query<I, Word<O>> query : queries) {
+                    query.answer(getCell(query.getPrefix(), query.getSuffix()));
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the snapshot to a file.
+     *
+     * @param file        The file to write to, which is overwritten
+     * @param inputCodec  The codec for the input symbols
+     * @param outputCodec The codec for the output symbols
+     * @throws IOException If the file could not be written
+     */
+    public void write(Path file, SymbolCodec<? super I> inputCodec, SymbolCodec<? super O> outputCodec)
+            throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(file)), checksum))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<I, Integer> inputIndices = new HashMap<>();
+            writeVarInt(out, this.inputs.size());
+            for (I input : this.inputs) {
+                inputIndices.put(input, inputIndices.size());
+                inputCodec.write(out, input);
+            }
+            writeVarInt(out, this.outputs.size());
+            for (O output : this.outputs) {
+                outputCodec.write(out, output);
+            }
+            writeVarInt(out, this.suffixes.size());
+            for (Word<I> suffix : this.suffixes) {
+                writeWord(out, suffix, inputIndices);
+            }
+            writeVarInt(out, this.rows.size());
+            writeVarInt(out, this.shortPrefixCount);
+            for (int i = 0; i < this.rows.size(); i++) {
+                writeWord(out, this.rows.get(i), inputIndices);
+                for (int symbol : this.cells[i]) {
+                    writeVarInt(out, symbol);
+                }
+            }
+            out.writeInt((int) checksum.getValue());
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(Path, SymbolCodec, SymbolCodec)}.
+     *
+     * @param file        The file to read from
+     * @param inputCodec  The codec for the input symbols
+     * @param outputCodec The codec for the output symbols
+     * @return The snapshot
+     * @throws IOException If the file could not be read, is not a snapshot, has
+     *                     an unsupported version or is corrupt
+     */
+    public static <I, O> TableSnapshot<I, O> read(Path file, SymbolCodec<I> inputCodec, SymbolCodec<O> outputCodec)
+            throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), checksum))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a snapshot of an observation table");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            List<I> inputs = new ArrayList<>();
+            for (int i = readVarInt(in); i > 0; i--) {
+                inputs.add(inputCodec.read(in));
+            }
+            List<O> outputs = new ArrayList<>();
+            for (int i = readVarInt(in); i > 0; i--) {
+                outputs.add(outputCodec.read(in));
+            }
+            List<Word<I>> suffixes = new ArrayList<>();
+            int rowLength = 0;
+            for (int i = readVarInt(in); i > 0; i--) {
+                Word<I> suffix = readWord(in, inputs);
+                suffixes.add(suffix);
+                rowLength += suffix.length();
+            }
+            int rowCount = readVarInt(in);
+            int shortPrefixCount = readVarInt(in);
+            if (shortPrefixCount > rowCount) {
+                throw new IOException("Corrupt snapshot " + file + ": more short prefixes than rows");
+            }
+            List<Word<I>> rows = new ArrayList<>(rowCount);
+            int[][] cells = new int[rowCount][];
+            for (int i = 0; i < rowCount; i++) {
+                rows.add(readWord(in, inputs));
+                cells[i] = new int[rowLength];
+                for (int j = 0; j < rowLength; j++) {
+                    cells[i][j] = readIndex(in, outputs.size());
+                }
+            }
+            int expected = (int) checksum.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Corrupt snapshot " + file + ": checksum mismatch");
+            }
+            return new TableSnapshot<>(inputs, outputs, suffixes, rows, shortPrefixCount, cells);
+        }
+    }
+
+    private static <I> void writeWord(DataOutput out, Word<I> word, Map<I, Integer> inputIndices)
+            throws IOException {
+        writeVarInt(out, word.length());
+        for (I symbol : word) {
+            writeVarInt(out, inputIndices.get(symbol));
+        }
+    }
+
+    private static <I> Word<I> readWord(DataInput in, List<I> inputs) throws IOException {
+        int length = readVarInt(in);
+        WordBuilder<I> word = new WordBuilder<>(length);
+        for (int i = 0; i < length; i++) {
+            word.append(inputs.get(readIndex(in, inputs.size())));
+        }
+        return word.toWord();
+    }
+
+    /**
+     * Writes a non-negative number in groups of 7 bits, least significant group
+     * first, with the high bit of every byte but the last one set
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt snapshot: variable length number is too long");
+    }
+
+    private static int readIndex(DataInput in, int size) throws IOException {
+        int index = readVarInt(in);
+        if (index >= size) {
+            throw new IOException("Corrupt snapshot: symbol index " + index + " out of range");
+        }
+        return index;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+
+import de.learnlib.oracle.MembershipOracle;
+import de.learnlib.query.Query;
+import net.automatalib.word.Word;
+
+/**
+ * Membership oracle which records every query it passes on in a
+ * {@link QueryTraceBuffer}: the lengths of its prefix and suffix, the time its
+ * batch took, and the phase of the learner that asked it.
+ * <p>
+ * The phase is followed by listening to the learner, see
+ * {@link OutputLstar#setListener(LearningListener)}: a query belongs to the
+ * innermost phase that has started and not finished yet. Outside of any phase,
+ * queries belong to the default phase, for example
+ * {@link LearningListener.Phase#EQUIVALENCE} for the oracle of the equivalence
+ * oracle. The oracle is placed behind the caches, so that it only records the
+ * queries asked to the target.
+ * <p>
+ * The queries are recorded per batch, so the time of a query is the time of
+ * its batch. Batches may be asked by several threads at the same time, but the
+ * phases should be reported by a single thread.
+ */
+public class TracingMembershipOracle<I, O> implements MembershipOracle.MealyMembershipOracle<I, O>, LearningListener {
+
+    private final MembershipOracle<I, Word<O>> delegate;
+    private final QueryTraceBuffer buffer;
+    private final Phase defaultPhase;
+    private final ArrayDeque<Phase> phases = new ArrayDeque<>();
+    private volatile Phase currentPhase;
+
+    /**
+     * @param delegate     The oracle answering the queries
+     * @param buffer       The buffer in which the queries are recorded, which can
+     *                     be shared with other oracles
+     * @param defaultPhase The phase of queries asked outside of any phase, or null
+     *                     if it is not known
+     */
+    public TracingMembershipOracle(MembershipOracle<I, Word<O>> delegate, QueryTraceBuffer buffer,
+            Phase defaultPhase) {
+        this.delegate = delegate;
+        this.buffer = buffer;
+        this.defaultPhase = defaultPhase;
+        this.currentPhase = defaultPhase;
+    }
+
+    @Override
+    public void processQueries(Collection<? extends Query<I, Word<O>>> queries) {
+        Phase phase = this.currentPhase;
+        long start = System.nanoTime();
+        this.delegate.processQueries(queries);
+        long end = System.nanoTime();
+        int ordinal = phase == null ? -1 : phase.ordinal();
+        for (Query<I, Word<O>> query : queries) {
+            this.buffer.record(ordinal, query.getPrefix().length(), query.getSuffix().length(), queries.size(),
+                    end - start, end);
+        }
+    }
+
+    @Override
+    public void phaseStarted(Phase phase) {
+        this.phases.push(phase);
+        this.currentPhase = phase;
+    }
+
+    @Override
+    public void phaseFinished(Phase phase, long nanos) {
+        if (phase == Phase.MEMBERSHIP_QUERIES || this.phases.isEmpty()) {
+            return;
+        }
+        this.phases.pop();
+        this.currentPhase = this.phases.isEmpty() ? this.defaultPhase : this.phases.peek();
+    }
+
+    public QueryTraceBuffer getBuffer() {
+        return this.buffer;
+    }
+}
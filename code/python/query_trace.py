@@ -0,0 +1,58 @@
+import struct
+import sys
+
+MAGIC = 0x4F4C5154
+RECORD = struct.Struct(">qqiiib3x")
+
+def read_trace(filename):
+    """Reads a query trace written by QueryTraceBuffer.dump.
+    Returns the names of the phases, the number of dropped records and the records,
+    as tuples (end, batch_nanos, prefix_length, suffix_length, batch_size, phase)."""
+    with open(filename, "rb") as f:
+        data = f.read()
+    magic, version, record_bytes, count, dropped = struct.unpack_from(">iiiiq", data, 0)
+    if magic != MAGIC:
+        raise ValueError("Not a query trace: " + filename)
+    if version != 1 or record_bytes != RECORD.size:
+        raise ValueError("Unsupported query trace version " + str(version))
+    offset = 24
+    (phase_count,) = struct.unpack_from(">i", data, offset)
+    offset += 4
+    phases = []
+    for _ in range(phase_count):
+        (length,) = struct.unpack_from(">H", data, offset)
+        offset += 2
+        phases.append(data[offset:offset + length].decode("utf-8"))
+        offset += length
+    records = [RECORD.unpack_from(data, offset + i * RECORD.size) for i in range(count)]
+    return phases, dropped, records
+
+def phase_name(phases, phase):
+    return phases[phase] if 0 <= phase < len(phases) else "UNKNOWN"
+
+def cost_per_phase(phases, records):
+    """Attributes the queries, symbols and SUL time to the phases.
+    The time of a batch is divided equally over its queries."""
+    costs = {}
+    for end, batch_nanos, prefix_length, suffix_length, batch_size, phase in records:
+        cost = costs.setdefault(phase_name(phases, phase), [0, 0, 0.0])
+        cost[0] += 1
+        cost[1] += prefix_length + suffix_length
+        cost[2] += batch_nanos / batch_size
+    return costs
+
+def main():
+    if len(sys.argv) != 2:
+        print("Usage: python query_trace.py <trace file>")
+        sys.exit(1)
+    phases, dropped, records = read_trace(sys.argv[1])
+    if dropped > 0:
+        print("Dropped records: " + str(dropped))
+    costs = cost_per_phase(phases, records)
+    total_time = sum(cost[2] for cost in costs.values()) or 1
+    print("Phase,Queries,Symbols,Time (ms),Time (%)")
+    for phase, (queries, symbols, nanos) in sorted(costs.items(), key=lambda item: -item[1][2]):
+        print(",".join([phase, str(queries), str(symbols), "%.1f" % (nanos / 1e6), "%.1f" % (100 * nanos / total_time)]))
+
+if __name__ == "__main__":
+    main()